@@ -1,19 +1,35 @@
 package signature;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * A signature for an entire graph.
  * 
+ * The signature strings for the vertices are remembered, up to the size of
+ * the memo, for the other methods to use - as is the canonical labelling. So
+ * the graph should not be changed once any of them has been called, unless 
+ * {@link #clearMemo()} is called afterwards.
+ * 
  * @author maclean
  *
  */
 public abstract class AbstractGraphSignature {
     
+    /**
+     * The least number of vertex signature strings remembered, by default
+     */
+    public static final int DEFAULT_MEMO_SIZE = 1024;
+    
     /**
      * The separator is printed between vertex signature strings
      */
@@ -27,6 +43,60 @@ public abstract class AbstractGraphSignature {
     
     private String graphSignature; // XXX
     
+    /**
+     * The vertex signature strings made so far, by vertex and height - made
+     * when first needed, as the vertex count is not known until then
+     */
+    private SignatureStringMemo memo;
+    
+    /**
+     * The most vertex signature strings to remember, or -1 to remember enough
+     * for every vertex at two heights
+     */
+    private int memoSize = -1;
+    
+    /**
+     * The started budget shared by all the vertex searches, or null for none
+     */
+    private SearchBudget budget;
+    
+    /**
+     * The canonical labels, once they have been made
+     */
+    private int[] canonicalLabels;
+    
+    /**
+     * If not null, the signatures for the vertices are made as tasks run by 
+     * this executor
+     */
+    private ExecutorService executor;
+    
+    /**
+     * If true, toCanonicalString passes the least string found so far to the
+     * canonization of each vertex as a bound
+     */
+    private boolean boundedCanonicalSearch = false;
+    
+    /**
+     * If true, the vertices are ranked by cheap invariants to choose which 
+     * are fully canonized when looking for the canonical string
+     */
+    private boolean prefilter = true;
+    
+    /**
+     * The heights of the signatures that rank the vertices in the prefilter,
+     * after their labels and degrees
+     */
+    private static final int[] PREFILTER_HEIGHTS = { 1, 2 };
+    
+    /**
+     * The vertices chosen by the prefilter, and the height they were chosen
+     * for, once they have been chosen
+     */
+    private int[] candidateVertices;
+    
+    private int candidateHeight;
+    
     /**
      * Create a graph signature with a default separator.
      */
@@ -72,6 +142,164 @@ public abstract class AbstractGraphSignature {
         return this.height;
     }
     
+    /**
+     * Set limits on the work for the whole graph. The budget is started when
+     * it is set (if it has not been started already), and every vertex 
+     * search made after that shares its deadline and charges its leaves and
+     * refinements to it. A search that passes a limit stops the call that 
+     * needed it with a {@link BudgetExceededException}. Set the budget again
+     * to give another call a budget of its own.
+     * 
+     * @param budget the limits on all the vertex searches, or null for none
+     */
+    public void setBudget(SearchBudget budget) {
+        if (budget == null || budget.isStarted()) {
+            this.budget = budget;
+        } else {
+            this.budget = budget.start();
+        }
+    }
+    
+    /**
+     * Make the canonical string of a vertex signature, within the budget. 
+     * Implementations should make their vertex signature strings with this.
+     * 
+     * @param vertexSignature the signature of a vertex
+     * @return the canonical string of the vertex signature
+     */
+    protected String canonicalStringFor(
+            AbstractVertexSignature vertexSignature) {
+        vertexSignature.setBudget(budget);
+        return vertexSignature.toCanonicalString();
+    }
+    
+    /**
+     * Make the signatures for the vertices concurrently, as tasks run by an 
+     * executor - for example, a ForkJoinPool. The signatures for different 
+     * vertices are independent, and the results are put back in vertex order,
+     * so the output is the same as making them one at a time. The executor is
+     * not shut down by the graph signature.
+     * 
+     * @param executor the executor to use, or null to make the signatures one
+     *        at a time in the calling thread
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Choose whether toCanonicalString passes the least vertex signature 
+     * found so far to the canonization of the next vertex, so that it can 
+     * stop as soon as it is clear that it will not be less. This only applies
+     * to signatures of the maximum height, and makes toCanonicalString work 
+     * vertex by vertex without keeping the strings for other methods to use;
+     * so it is best when only the canonical string is wanted.
+     * 
+     * @param boundedCanonicalSearch true to bound the search for each vertex
+     */
+    public void setBoundedCanonicalSearch(boolean boundedCanonicalSearch) {
+        this.boundedCanonicalSearch = boundedCanonicalSearch;
+    }
+    
+    public boolean isBoundedCanonicalSearch() {
+        return boundedCanonicalSearch;
+    }
+    
+    /**
+     * Choose whether toCanonicalString ranks the vertices first, and only 
+     * fully canonizes the vertices that rank least. The vertices are ranked 
+     * by their label, then their degree, then their signature strings of 
+     * height 1 and 2 - all of which are cheap to make, and usually leave only
+     * a handful of vertices to canonize.
+     * 
+     * The ranks do not depend on the order of the vertices, so the string is
+     * still canonical. It is not always the lexicographically least of all 
+     * the vertex strings, though, so strings made with and without the 
+     * prefilter should not be compared. It is on by default.
+     * 
+     * The canonical labels are always made from the vertex with the least 
+     * string, so getCanonicalLabels only skips the vertices with a greater 
+     * label, which does not change the result.
+     * 
+     * @param prefilter true to choose the vertices to canonize by rank
+     */
+    public void setPrefilter(boolean prefilter) {
+        this.prefilter = prefilter;
+        this.candidateVertices = null;
+        this.canonicalLabels = null;
+    }
+    
+    public boolean isPrefilter() {
+        return prefilter;
+    }
+    
+    /**
+     * Set the number of vertex signature strings to remember, so that asking
+     * for the same vertex at the same height again does not make a new vertex
+     * signature. The least recently used strings are forgotten first. This 
+     * forgets any remembered so far. By default, the strings for every vertex
+     * at four heights are remembered - for example, the height of this 
+     * signature, the maximum height and the two heights of the prefilter - 
+     * with a minimum of {@link #DEFAULT_MEMO_SIZE}.
+     * 
+     * @param memoSize the most vertex signature strings to remember
+     */
+    public void setMemoSize(int memoSize) {
+        this.memoSize = memoSize;
+        this.memo = null;
+    }
+    
+    /**
+     * Forget the vertex signature strings and the canonical labelling made so
+     * far - for example, to free the memory they use, or after changing the 
+     * graph.
+     */
+    public void clearMemo() {
+        if (memo != null) {
+            memo.clear();
+        }
+        canonicalLabels = null;
+        candidateVertices = null;
+    }
+    
+    private SignatureStringMemo getMemo() {
+        if (memo == null) {
+            if (memoSize == -1) {
+                memo = new SignatureStringMemo(
+                        Math.max(DEFAULT_MEMO_SIZE, 4 * getVertexCount()));
+            } else {
+                memo = new SignatureStringMemo(memoSize);
+            }
+        }
+        return memo;
+    }
+    
+    /**
+     * Look up a vertex signature string that has been made before. 
+     * Implementations can use this in signatureStringForVertex, so that all
+     * the ways of getting a vertex string share the same memo.
+     * 
+     * @param vertexIndex the vertex index
+     * @param height the height of the signature, or -1 for the maximum height
+     * @return the string, or null if it has not been made or was forgotten
+     */
+    protected String recallSignatureString(int vertexIndex, int height) {
+        return getMemo().get(vertexIndex, height);
+    }
+    
+    /**
+     * Remember a vertex signature string, to be looked up with 
+     * {@link #recallSignatureString(int, int)}.
+     * 
+     * @param vertexIndex the vertex index
+     * @param height the height of the signature, or -1 for the maximum height
+     * @param signatureString the signature string of the vertex
+     */
+    protected void rememberSignatureString(
+            int vertexIndex, int height, String signatureString) {
+        getMemo().put(vertexIndex, height, signatureString);
+    }
+    
     /**
      * Get the vertex count of the graph that this is the signature of.
      * 
@@ -79,6 +307,31 @@ public abstract class AbstractGraphSignature {
      */
     protected abstract int getVertexCount();
     
+    /**
+     * Get the label of a vertex, as printed at the start of its signature 
+     * strings, to rank the vertices to canonize without making any vertex 
+     * signatures. Graphs with labelled vertices should override this; the 
+     * default of null means that the vertices have no labels to compare.
+     * 
+     * @param vertexIndex the vertex index
+     * @return the label of the vertex, or null
+     */
+    protected String getVertexLabel(int vertexIndex) {
+        return null;
+    }
+    
+    /**
+     * Get the number of neighbours of a vertex, to rank the vertices to 
+     * canonize without making any vertex signatures. Graphs should override
+     * this; the default of 0 means that the degrees are not compared.
+     * 
+     * @param vertexIndex the vertex index
+     * @return the degree of the vertex
+     */
+    protected int getVertexDegree(int vertexIndex) {
+        return 0;
+    }
+    
     /**
      * Return the canonical signature string for the vertex at index 
      * <code>vertexIndex</code> in the graph.
@@ -110,15 +363,290 @@ public abstract class AbstractGraphSignature {
     public abstract AbstractVertexSignature signatureForVertex(int vertexIndex);
     
     /**
-     * Run through the vertices of the graph, generating a signature string for
+     * Get the signature strings for every vertex at a height, making them if 
+     * they have not been made before.
+     * 
+     * @param height the height of the signatures, or -1 for the maximum height
+     * @return the signature strings, in the same order as the vertices
+     */
+    private String[] getSignatureStrings(int height) {
+        return getSignatureStrings(height, allVertices());
+    }
+    
+    private int[] allVertices() {
+        int[] vertices = new int[getVertexCount()];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = i;
+        }
+        return vertices;
+    }
+    
+    /**
+     * Get the signature strings for some of the vertices at a height, from 
+     * the memo or by making any that are not remembered. Equal strings are
+     * shared, so equivalent vertices have the same string object.
+     * 
+     * @param height the height of the signatures, or -1 for the maximum height
+     * @param vertices the indices of the vertices to get the strings for
+     * @return the signature strings by vertex index, which are null for the
+     *         vertices that were not asked for
+     */
+    private String[] getSignatureStrings(int height, int[] vertices) {
+        SignatureStringMemo memo = getMemo();
+        String[] signatureStrings = new String[getVertexCount()];
+        List<Integer> missing = new ArrayList<Integer>();
+        for (int vertexIndex : vertices) {
+            signatureStrings[vertexIndex] = memo.get(vertexIndex, height);
+            if (signatureStrings[vertexIndex] == null) {
+                missing.add(vertexIndex);
+            }
+        }
+        if (executor == null || missing.size() < 2) {
+            for (int vertexIndex : missing) {
+                signatureStrings[vertexIndex] = 
+                    makeSignatureString(vertexIndex, height);
+            }
+        } else {
+            makeSignatureStringsConcurrently(height, missing, signatureStrings);
+        }
+        Map<String, String> sharedStrings = new HashMap<String, String>();
+        for (int vertexIndex : vertices) {
+            String signatureString = signatureStrings[vertexIndex];
+            String shared = sharedStrings.get(signatureString);
+            if (shared == null) {
+                sharedStrings.put(signatureString, signatureString);
+            } else {
+                signatureStrings[vertexIndex] = shared;
+            }
+        }
+        for (int vertexIndex : missing) {
+            memo.put(vertexIndex, height, signatureStrings[vertexIndex]);
+        }
+        return signatureStrings;
+    }
+    
+    /**
+     * @return true if the strings for every vertex at a height are remembered
+     */
+    private boolean hasSignatureStrings(int height) {
+        return hasSignatureStrings(height, allVertices());
+    }
+    
+    /**
+     * @return true if the strings for some vertices at a height are remembered
+     */
+    private boolean hasSignatureStrings(int height, int[] vertices) {
+        SignatureStringMemo memo = getMemo();
+        for (int vertexIndex : vertices) {
+            if (!memo.contains(vertexIndex, height)) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Choose the vertices that could have the least signature string, using
+     * their labels. Every signature string starts with the root label, as 
+     * in the signature of height 0, so a vertex with a label that differs 
+     * from the least one by a greater character cannot have the least full
+     * string. If the prefilter is off, there are no labels, or all the labels
+     * are the same, then every vertex is a candidate.
+     * 
+     * @return the indices of the vertices that could have the least string
+     */
+    private int[] getLabelCandidates() {
+        if (!prefilter) {
+            return allVertices();
+        }
+        String[] prefilterStrings = new String[getVertexCount()];
+        String least = null;
+        boolean allSame = true;
+        for (int i = 0; i < prefilterStrings.length; i++) {
+            String label = getVertexLabel(i);
+            if (label == null) {
+                return allVertices();
+            }
+            prefilterStrings[i] = AbstractVertexSignature.START_NODE_SYMBOL 
+                + label + AbstractVertexSignature.END_NODE_SYMBOL;
+            if (least == null || prefilterStrings[i].compareTo(least) < 0) {
+                least = prefilterStrings[i];
+            }
+            if (!prefilterStrings[i].equals(prefilterStrings[0])) {
+                allSame = false;
+            }
+        }
+        if (allSame) {
+            return allVertices();
+        }
+        int[] candidates = new int[prefilterStrings.length];
+        int candidateCount = 0;
+        for (int i = 0; i < prefilterStrings.length; i++) {
+            if (!differsByGreaterCharacter(prefilterStrings[i], least)) {
+                candidates[candidateCount] = i;
+                candidateCount++;
+            }
+        }
+        return Arrays.copyOf(candidates, candidateCount);
+    }
+    
+    /**
+     * @return true if <code>s</code> is greater than <code>least</code> at a 
+     *         position within both strings, rather than by being longer
+     */
+    private boolean differsByGreaterCharacter(String s, String least) {
+        int length = Math.min(s.length(), least.length());
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != least.charAt(i)) {
+                return s.charAt(i) > least.charAt(i);
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Choose the vertices to fully canonize for the canonical string, by 
+     * ranking the candidates by label on their degree, then on their 
+     * signature strings at each of the prefilter heights below the height of
+     * the full signatures. Each step only ranks the vertices that were least
+     * at the step before, and stops once one vertex is left. If the 
+     * prefilter is off, every vertex is a candidate.
+     * 
+     * @param height the height of the full signatures, or -1 for the maximum
+     * @return the indices of the vertices to fully canonize, in order
+     */
+    private int[] getCandidateVertices(int height) {
+        if (!prefilter) {
+            return allVertices();
+        }
+        if (candidateVertices != null && candidateHeight == height) {
+            return candidateVertices;
+        }
+        int[] candidates = getLabelCandidates();
+        if (candidates.length > 1) {
+            List<Integer> degrees = new ArrayList<Integer>(candidates.length);
+            for (int vertexIndex : candidates) {
+                degrees.add(getVertexDegree(vertexIndex));
+            }
+            candidates = withLeastKey(candidates, degrees);
+        }
+        
+        for (int prefilterHeight : PREFILTER_HEIGHTS) {
+            if (candidates.length < 2 
+                    || (height != -1 && prefilterHeight >= height)) {
+                break;
+            }
+            String[] strings = getSignatureStrings(prefilterHeight, candidates);
+            List<String> keys = new ArrayList<String>(candidates.length);
+            for (int vertexIndex : candidates) {
+                keys.add(strings[vertexIndex]);
+            }
+            candidates = withLeastKey(candidates, keys);
+        }
+        
+        candidateVertices = candidates;
+        candidateHeight = height;
+        return candidates;
+    }
+    
+    /**
+     * @param vertices some vertex indices
+     * @param keys the key of each of the vertices, in the same order
+     * @return the vertices that have the least key, in order
+     */
+    private static <T extends Comparable<T>> int[] withLeastKey(
+            int[] vertices, List<T> keys) {
+        T least = null;
+        for (T key : keys) {
+            if (least == null || key.compareTo(least) < 0) {
+                least = key;
+            }
+        }
+        int[] withLeast = new int[vertices.length];
+        int count = 0;
+        for (int i = 0; i < vertices.length; i++) {
+            if (keys.get(i).compareTo(least) == 0) {
+                withLeast[count] = vertices[i];
+                count++;
+            }
+        }
+        return Arrays.copyOf(withLeast, count);
+    }
+    
+    private String makeSignatureString(int vertexIndex, int height) {
+        if (height == this.height) {
+            return this.signatureStringForVertex(vertexIndex);
+        } else {
+            return this.signatureStringForVertex(vertexIndex, height);
+        }
+    }
+    
+    /**
+     * Make the signature string for each vertex as a separate task, and wait
+     * for them all to finish.
+     * 
+     * @param height the height of the signatures, or -1 for the maximum height
+     * @param vertices the indices of the vertices to make strings for
+     * @param signatureStrings the array to put the strings in, by vertex
+     */
+    private void makeSignatureStringsConcurrently(final int height, 
+            List<Integer> vertices, String[] signatureStrings) {
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (final int vertexIndex : vertices) {
+            futures.add(executor.submit(new Callable<String>() {
+                public String call() {
+                    return makeSignatureString(vertexIndex, height);
+                }
+            }));
+        }
+        
+        try {
+            for (int i = 0; i < vertices.size(); i++) {
+                signatureStrings[vertices.get(i)] = futures.get(i).get();
+            }
+        } catch (InterruptedException ie) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while making vertex signatures", ie);
+        } catch (ExecutionException ee) {
+            cancelAll(futures);
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+    
+    private void cancelAll(List<Future<String>> futures) {
+        for (Future<String> future : futures) {
+            future.cancel(true);
+        }
+    }
+    
+    /**
+     * Run through the vertices of the graph that rank least in the prefilter
+     * (see {@link #setPrefilter(boolean)}), generating a signature string for
      * each vertex, and return the one that is lexicographically minimal.
      * 
-     * @return the lexicographically minimal vertex string
+     * @return the lexicographically minimal vertex string of the candidates
      */
     public String toCanonicalString() {
+        if (getVertexCount() == 0) {
+            return "";
+        }
+        int[] candidates = getCandidateVertices(this.height);
+        if (boundedCanonicalSearch && this.height == -1 
+                && !hasSignatureStrings(this.height, candidates)) {
+            return toCanonicalStringWithBound(candidates);
+        }
+        String[] signatureStrings = 
+            getSignatureStrings(this.height, candidates);
         String canonicalString = null;
-        for (int i = 0; i < this.getVertexCount(); i++) {
-            String signatureString = this.signatureStringForVertex(i);
+        for (int vertexIndex : candidates) {
+            String signatureString = signatureStrings[vertexIndex];
             if (canonicalString == null ||
                     canonicalString.compareTo(signatureString) > 0) {
                 canonicalString = signatureString; 
@@ -131,6 +659,79 @@ public abstract class AbstractGraphSignature {
         }
     }
     
+    /**
+     * Make the fingerprint of the canonical signature string of the graph. 
+     * Two isomorphic graphs have the same fingerprint, so fingerprints can be
+     * stored instead of whole strings to find duplicate graphs.
+     * 
+     * @return the fingerprint of {@link #toCanonicalString()}
+     */
+    public Fingerprint toFingerprint() {
+        return Fingerprint.of(toCanonicalString());
+    }
+    
+    /**
+     * Make a fingerprint of the multiset of vertex signatures - that is, of 
+     * the same information as {@link #toFullString()}. The fingerprints of 
+     * the vertices are summed, so they do not need to be sorted, and if the 
+     * vertex strings have not been made then they are only hashed.
+     * 
+     * @return the fingerprint of the vertex signatures
+     */
+    public Fingerprint toFullFingerprint() {
+        Fingerprint sum = new Fingerprint(0, 0);
+        if (this.height == -1 && !hasSignatureStrings(this.height)) {
+            for (int i = 0; i < getVertexCount(); i++) {
+                AbstractVertexSignature signature = signatureForVertex(i);
+                signature.setBudget(budget);
+                sum = sum.add(signature.toFingerprint());
+            }
+        } else {
+            Map<String, Fingerprint> fingerprints = 
+                new HashMap<String, Fingerprint>();
+            for (String signatureString : getSignatureStrings(this.height)) {
+                Fingerprint fingerprint = fingerprints.get(signatureString);
+                if (fingerprint == null) {
+                    fingerprint = Fingerprint.of(signatureString);
+                    fingerprints.put(signatureString, fingerprint);
+                }
+                sum = sum.add(fingerprint);
+            }
+        }
+        // hash the sum again, so that it is not a linear function of the parts
+        return new FingerprintHasher()
+            .update(sum.getHigh()).update(sum.getLow()).finish();
+    }
+    
+    /**
+     * Find the lexicographically minimal vertex string, by canonizing each 
+     * vertex against the least string so far.
+     * 
+     * @param candidates the vertices to canonize
+     * @return the lexicographically minimal vertex string
+     */
+    private String toCanonicalStringWithBound(int[] candidates) {
+        String canonicalString = null;
+        for (int i : candidates) {
+            AbstractVertexSignature signature = this.signatureForVertex(i);
+            signature.setBudget(budget);
+            if (canonicalString == null) {
+                canonicalString = signature.toCanonicalString();
+            } else {
+                String signatureString = 
+                    signature.toCanonicalStringBelow(canonicalString);
+                if (signatureString != null) {
+                    canonicalString = signatureString;
+                }
+            }
+        }
+        if (canonicalString == null) {
+            return "";
+        } else {
+            return canonicalString;
+        }
+    }
+    
     /**
      * For all the vertices in the graph, get the signature string and group the
      * resulting list of strings into symmetry classes. All vertices in one
@@ -144,23 +745,22 @@ public abstract class AbstractGraphSignature {
     }
         
     public List<SymmetryClass> getSymmetryClasses(int height) {
-        List<SymmetryClass> symmetryClasses = new ArrayList<SymmetryClass>();
-        for (int i = 0; i < this.getVertexCount(); i++) {
-            String signatureString = this.signatureStringForVertex(i, height);
-            SymmetryClass foundClass = null;
-            for (SymmetryClass symmetryClass : symmetryClasses) {
-                if (symmetryClass.hasSignature(signatureString)) {
-                    foundClass = symmetryClass;
-                    break;
-                }
-            }
+        // the classes are kept in the order that their first vertex appears
+        Map<String, SymmetryClass> symmetryClasses = 
+            new LinkedHashMap<String, SymmetryClass>();
+        SignatureInterner interner = new SignatureInterner();
+        String[] signatureStrings = getSignatureStrings(height);
+        for (int i = 0; i < signatureStrings.length; i++) {
+            String signatureString = signatureStrings[i];
+            SymmetryClass foundClass = symmetryClasses.get(signatureString);
             if (foundClass == null) {
-                foundClass = new SymmetryClass(signatureString);
-                symmetryClasses.add(foundClass);
+                foundClass = 
+                    new SymmetryClass(interner.intern(signatureString));
+                symmetryClasses.put(signatureString, foundClass);
             } 
             foundClass.addIndex(i);
         }
-        return symmetryClasses;
+        return new ArrayList<SymmetryClass>(symmetryClasses.values());
     }
 
     /**
@@ -172,8 +772,7 @@ public abstract class AbstractGraphSignature {
      */
     public String toFullString() {
         Map<String, Integer> sigmap = new HashMap<String, Integer>(); 
-        for (int i = 0; i < this.getVertexCount(); i++) {
-            String signatureString = this.signatureStringForVertex(i);
+        for (String signatureString : getSignatureStrings(this.height)) {
             if (sigmap.containsKey(signatureString)) {
                 int count = sigmap.get(signatureString);
                 sigmap.put(signatureString, count + 1);
@@ -229,12 +828,56 @@ public abstract class AbstractGraphSignature {
      */
     public List<String> getVertexSignatureStrings() {
         List<String> vertexSignatures = new ArrayList<String>();
-        for (int i = 0; i < this.getVertexCount(); i++) {
-            vertexSignatures.add(this.signatureStringForVertex(i));
+        for (String signatureString : getSignatureStrings(this.height)) {
+            vertexSignatures.add(signatureString);
         }
         return vertexSignatures;
     }
     
+    /**
+     * Get the canonical signature strings for each vertex in compact form, 
+     * in the same order as the vertices. Vertices with the same signature 
+     * share the same compact signature.
+     * 
+     * @return a list of compact signatures
+     */
+    public List<CompactSignature> getCompactVertexSignatures() {
+        return getCompactVertexSignatures(new SignatureInterner());
+    }
+    
+    /**
+     * Get the canonical signature strings for each vertex in compact form, 
+     * shared through an interning table - which can be used for the 
+     * signatures of many graphs.
+     * 
+     * @param interner the table of signatures to share
+     * @return a list of compact signatures, in the same order as the vertices
+     */
+    public List<CompactSignature> getCompactVertexSignatures(
+            SignatureInterner interner) {
+        List<CompactSignature> compactSignatures = 
+            new ArrayList<CompactSignature>();
+        Map<String, CompactSignature> encoded = 
+            new HashMap<String, CompactSignature>();
+        SignatureStringMemo memo = getMemo();
+        String[] signatureStrings = getSignatureStrings(this.height);
+        for (int i = 0; i < signatureStrings.length; i++) {
+            CompactSignature compact = encoded.get(signatureStrings[i]);
+            if (compact == null) {
+                // the memo holds the compact form, unless it was forgotten
+                compact = memo.getCompact(i, this.height);
+                if (compact == null) {
+                    compact = interner.intern(signatureStrings[i]);
+                } else {
+                    compact = interner.intern(compact);
+                }
+                encoded.put(signatureStrings[i], compact);
+            }
+            compactSignatures.add(compact);
+        }
+        return compactSignatures;
+    }
+    
     /**
      * Create a list of vertex signatures, one for each vertex.They are 
      * unsorted, so will be in the same order as the vertices.
@@ -279,19 +922,33 @@ public abstract class AbstractGraphSignature {
     }
     
     public int[] getCanonicalLabels() {
-        int n = getVertexCount();
-        AbstractVertexSignature canonicalSignature = null;
-        String canonicalSignatureString = null;
-        for (int i = 0; i < n; i++) {
-            AbstractVertexSignature signatureForVertexI = signatureForVertex(i);
-            String signatureString = signatureForVertexI.toCanonicalString();
-            if (canonicalSignature == null ||
-                    signatureString.compareTo(canonicalSignatureString) < 0) {
-                canonicalSignature = signatureForVertexI;
-                canonicalSignatureString = signatureString;
+        if (canonicalLabels == null) {
+            int n = getVertexCount();
+            
+            // the labelling is made from the first vertex with the minimal
+            // signature string at the maximum height - of all the vertices, 
+            // as a labelling from any other vertex may not be canonical
+            int[] candidates;
+            if (hasSignatureStrings(-1)) {
+                candidates = allVertices();
+            } else {
+                candidates = getLabelCandidates();
+            }
+            String[] signatureStrings = getSignatureStrings(-1, candidates);
+            int canonicalVertex = -1;
+            for (int i : candidates) {
+                if (canonicalVertex == -1 || signatureStrings[i].compareTo(
+                        signatureStrings[canonicalVertex]) < 0) {
+                    canonicalVertex = i;
+                }
             }
+            
+            AbstractVertexSignature canonicalSignature = 
+                signatureForVertex(canonicalVertex);
+            canonicalSignature.setBudget(budget);
+            canonicalLabels = canonicalSignature.getCanonicalLabelling(n);
         }
-        return canonicalSignature.getCanonicalLabelling(n);
+        return canonicalLabels.clone();
     }
     
     public String reconstructCanonicalEdgeString() {
@@ -20,9 +20,9 @@ public abstract class AbstractQuotientGraph {
         
         public List<Integer> members;
         
-        public String signature;
+        public CompactSignature signature;
         
-        public Vertex(List<Integer> members, String signature) {
+        public Vertex(List<Integer> members, CompactSignature signature) {
             this.members = members;
             this.signature = signature;
         }
@@ -87,7 +87,7 @@ public abstract class AbstractQuotientGraph {
     public List<String> getVertexSignatureStrings() {
         List<String> signatureStrings = new ArrayList<String>();
         for (Vertex vertex : vertices) {
-            signatureStrings.add(vertex.signature);
+            signatureStrings.add(vertex.signature.toString());
         }
         return signatureStrings;
     }
@@ -96,14 +96,14 @@ public abstract class AbstractQuotientGraph {
         // make the vertices from the symmetry classes
         for (int i = 0; i < symmetryClasses.size(); i++) {
             SymmetryClass symmetryClass = symmetryClasses.get(i);
-            String signatureString = symmetryClass.getSignatureString();
+            CompactSignature signature = symmetryClass.getCompactSignature();
             List<Integer> members = new ArrayList<Integer>();
             for (int e : symmetryClass) { members.add(e); }
-            vertices.add(new Vertex(members, signatureString));
+            vertices.add(new Vertex(members, signature));
         }
         
         // compare all vertices (classwise) for connectivity
-        List<Edge> visitedEdges = new ArrayList<Edge>();
+        ArcSet visitedEdges = new ArcSet();
         for (int i = 0; i < symmetryClasses.size(); i++) {
             SymmetryClass symmetryClass = symmetryClasses.get(i);
             for (int j = i; j < symmetryClasses.size(); j++) {
@@ -113,10 +113,8 @@ public abstract class AbstractQuotientGraph {
                     int countForX = 0;
                     for (int y : otherSymmetryClass) {
                         if (x == y) continue;
-                        if (isConnected(x, y) 
-                                && !inVisitedEdges(x, y, visitedEdges)) {
+                        if (isConnected(x, y) && visitedEdges.add(x, y)) {
                             countForX++;
-                            visitedEdges.add(new Edge(x, y, 0));
                         }
                     }
                     totalCount += countForX;
@@ -128,16 +126,6 @@ public abstract class AbstractQuotientGraph {
         }
     }
     
-    private boolean inVisitedEdges(int x, int y, List<Edge> visitedEdges) {
-        for (Edge edge : visitedEdges) {
-            if ((edge.vertexIndexA == x && edge.vertexIndexB == y) 
-                    || (edge.vertexIndexA == y && edge.vertexIndexB == x )) {
-                return true;
-            }
-        }
-        return false;
-    }
-    
     public String toString() {
         StringBuffer buffer = new StringBuffer();
         int i = 0;
@@ -3,9 +3,7 @@ package signature;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * The base class for signatures that are created from a vertex of a graph. A
@@ -43,17 +41,103 @@ public abstract class AbstractVertexSignature {
     private int vertexCount;
     
     /**
-     * Mapping between the vertex indices in the original graph and the vertex   
-     * indices stored in the Nodes. This is necessary for signatures with a
+     * Mapping between the vertex indices stored in the Nodes and the vertex   
+     * indices in the original graph. This is necessary for signatures with a
      * height less than the graph diameter. It is also the order in which the
      * vertices were visited to make the DAG.
      */
-    private Map<Integer, Integer> vertexMapping;
+    private int[] internalToExternal;
+    
+    /**
+     * The inverse of the internalToExternal mapping, with a value of -1 for 
+     * graph vertices that have not (yet) been visited. 
+     */
+    private int[] externalToInternal;
+    
+    /**
+     * If true, the printing of a colored signature stops as soon as it is
+     * known to be less than the best signature found so far
+     */
+    private boolean prefixPruning = true;
+    
+    /**
+     * The buffer that colored signatures are printed into while canonizing
+     */
+    private SignatureBuffer leafBuffer;
+    
+    /**
+     * If true, branches of the canonical search that are equivalent under an
+     * automorphism found earlier in the search are skipped
+     */
+    private boolean automorphismPruning = true;
+    
+    /**
+     * The automorphisms found while canonizing, as permutations of the 
+     * internal vertex indices
+     */
+    private List<int[]> automorphisms = new ArrayList<int[]>();
+    
+    /**
+     * The vertices colored on the way down to the current branch of the 
+     * canonical search
+     */
+    private int[] path;
+    
+    private int pathLength;
+    
+    /**
+     * The orbits of the automorphisms that fix the current path, as a 
+     * union-find forest, and the number of automorphisms when it was made
+     */
+    private int[] pathOrbits;
+    
+    private int pathOrbitsAutomorphismCount;
+    
+    /**
+     * If true, the search records the labelling of each leaf that gives a new
+     * best signature
+     */
+    private boolean recordingLabelling;
+    
+    /**
+     * The labelling of the leaf that gave the best signature in the last 
+     * search that recorded labellings
+     */
+    private int[] bestLabelling;
+    
+    /**
+     * If not null, the search stops as soon as a candidate signature is not
+     * less than this, as the canonical signature will not be less either
+     */
+    private SignatureBuffer ceiling;
+    
+    /**
+     * True if the current search was stopped by reaching the ceiling
+     */
+    private boolean reachedCeiling;
+    
+    /**
+     * The limits on each search, or null for none
+     */
+    private SearchBudget budget;
+    
+    /**
+     * The started budget that the current search charges its work to, or 
+     * null for none
+     */
+    private SearchBudget searchBudget;
+    
+    /**
+     * True once this signature has been canonized, which reorders its DAG
+     */
+    private boolean searched;
     
     public enum InvariantType { STRING, INTEGER };
     
     private InvariantType invariantType;
     
+    private DAG.RankingMethod rankingMethod;
+    
     /**
      * Create an abstract vertex signature.
      */
@@ -63,13 +147,27 @@ public abstract class AbstractVertexSignature {
     
     /**
      * Create an abstract vertex signature that uses the given invariant type
-     * for the initial invariants. 
+     * for the initial invariants, ranked by sorting. 
      * 
      * @param invariantType
      */
     public AbstractVertexSignature(InvariantType invariantType) {
+        this(invariantType, DAG.RankingMethod.SORT);
+    }
+    
+    /**
+     * Create an abstract vertex signature that uses the given invariant type
+     * for the initial invariants, and the given method to rank the invariants
+     * - both when they are first made and when they are refined.
+     * 
+     * @param invariantType
+     * @param rankingMethod the ranking method to use
+     */
+    public AbstractVertexSignature(
+            InvariantType invariantType, DAG.RankingMethod rankingMethod) {
         this.vertexCount = 0;
         this.invariantType = invariantType;
+        this.rankingMethod = rankingMethod;
     }
     
     /**
@@ -81,6 +179,96 @@ public abstract class AbstractVertexSignature {
         return this.height;
     }
     
+    /**
+     * Set the method used to rank nodes and vertices by their invariants. The
+     * default is {@link DAG.RankingMethod#SORT}. If the DAG has already been
+     * made, its initial invariants are ranked again with the new method. Both
+     * methods give the same signature.
+     * 
+     * @param rankingMethod the ranking method to use
+     */
+    public void setRankingMethod(DAG.RankingMethod rankingMethod) {
+        if (searched) {
+            throw new IllegalStateException(
+                    "Cannot change the ranking method after canonizing");
+        }
+        this.rankingMethod = rankingMethod;
+        if (dag != null) {
+            dag.setRankingMethod(rankingMethod);
+            initializeLabels();
+        }
+    }
+    
+    public DAG.RankingMethod getRankingMethod() {
+        return rankingMethod;
+    }
+    
+    /**
+     * Choose whether to stop printing a candidate signature while canonizing
+     * once it is already less than the best candidate. Both give the same 
+     * signature.
+     * 
+     * @param prefixPruning true to stop printing losing candidates early
+     */
+    public void setPrefixPruning(boolean prefixPruning) {
+        this.prefixPruning = prefixPruning;
+    }
+    
+    /**
+     * Set limits on the work done by each search. If a search passes one of
+     * them, it stops with a {@link BudgetExceededException}. If the budget 
+     * has been started, the searches share its deadline and counts with any
+     * other searches that use it; otherwise each search starts its own copy.
+     * 
+     * @param budget the limits, or null for no limits
+     */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+    
+    public SearchBudget getBudget() {
+        return budget;
+    }
+    
+    /**
+     * Choose whether to skip branches of the canonical search that are 
+     * equivalent to an already searched branch under an automorphism found
+     * during the search. Both give the same signature string. Branches are 
+     * only skipped for signatures of the full height, as the permutations 
+     * found for a lower height may not be automorphisms of the graph.
+     * 
+     * @param automorphismPruning true to skip equivalent branches
+     */
+    public void setAutomorphismPruning(boolean automorphismPruning) {
+        this.automorphismPruning = automorphismPruning;
+    }
+    
+    /**
+     * Get the automorphisms found by the last canonization, which happen when
+     * two colorings give the same signature string. Each one is a permutation
+     * of the vertices of the graph; vertices that are not in the signature
+     * (which has a height < graph diameter) are mapped to themselves. These
+     * are not guaranteed to generate the whole automorphism group.
+     * 
+     * @param totalVertexCount the number of vertices in the graph
+     * @return a list of permutations of the vertices of the graph
+     */
+    public List<int[]> getAutomorphisms(int totalVertexCount) {
+        List<int[]> externalAutomorphisms = new ArrayList<int[]>();
+        for (int[] automorphism : automorphisms) {
+            int[] external = new int[totalVertexCount];
+            for (int i = 0; i < totalVertexCount; i++) {
+                external[i] = i;
+            }
+            for (int i = 0; i < getVertexCount(); i++) {
+                external[getOriginalVertexIndex(i)] = 
+                    getOriginalVertexIndex(automorphism[i]);
+            }
+            externalAutomorphisms.add(external);
+        }
+        return externalAutomorphisms;
+    }
+    
     /**
      * Look up the original graph vertex that <code>vertexIndex</code> maps to.  
      * 
@@ -88,13 +276,10 @@ public abstract class AbstractVertexSignature {
      * @return the vertex index in the original graph
      */
     public int getOriginalVertexIndex(int vertexIndex) {
-        for (int originalVertexIndex : vertexMapping.keySet()) {
-            int internalVertexIndex = vertexMapping.get(originalVertexIndex);
-            if (internalVertexIndex == vertexIndex) {
-                return originalVertexIndex;
-            }
+        if (vertexIndex < 0 || vertexIndex >= vertexCount) {
+            return -1;
         }
-        return -1;
+        return internalToExternal[vertexIndex];
     }
 
     /**
@@ -124,11 +309,100 @@ public abstract class AbstractVertexSignature {
      */
     public void create(int rootVertexIndex, int graphVertexCount, int height) {
         this.height = height;
-        vertexMapping = new HashMap<Integer, Integer>();
-        vertexMapping.put(rootVertexIndex, 0);
-        dag = new DAG(0, graphVertexCount);
+        internalToExternal = new int[graphVertexCount];
+        externalToInternal = new int[graphVertexCount];
+        Arrays.fill(externalToInternal, -1);
+        internalToExternal[0] = rootVertexIndex;
+        externalToInternal[rootVertexIndex] = 0;
+        dag = new DAG(0, graphVertexCount, rankingMethod);
         vertexCount = 1;
-        build(1, dag.getRootLayer(), new ArrayList<DAG.Arc>(), height);
+        build(1, dag.getRootLayer(), new ArcSet(), height);
+        initializeLabels();
+    }
+    
+    /**
+     * This is a kind of constructor that builds the internal representation of
+     * the signature from the DAG of a taller signature for the same root. The
+     * layers of the DAG up to the height are the same as if the graph had 
+     * been visited again, so they are copied instead.
+     * 
+     * @param taller
+     *            a signature for the same root with a greater height, which 
+     *            must not have been canonized yet
+     * @param height
+     *            the height of this signature
+     */
+    protected void createFromPrefix(AbstractVertexSignature taller, int height) {
+        if (taller.searched) {
+            throw new IllegalStateException(
+                    "Cannot copy the DAG of a signature after canonizing it");
+        }
+        if (height < 0 || (taller.height != -1 && height > taller.height)) {
+            throw new IllegalArgumentException("Height " + height 
+                    + " is not within the height " + taller.height);
+        }
+        this.height = height;
+        int graphVertexCount = taller.internalToExternal.length;
+        dag = new DAG(0, graphVertexCount, rankingMethod);
+        vertexCount = 1;
+        
+        // nodes are made layer by layer, so those in the first layers have 
+        // the first indices - and copying them in order keeps the indices
+        int nodeCount = 0;
+        for (List<DAG.Node> layer : taller.dag) {
+            nodeCount += layer.size();
+        }
+        DAG.Node[] copies = new DAG.Node[nodeCount];
+        copies[0] = dag.getRoot();
+        int layerIndex = 0;
+        for (List<DAG.Node> layer : taller.dag) {
+            if (layerIndex > height) {
+                break;
+            } else if (layerIndex > 0) {
+                List<DAG.Node> copiedLayer = new ArrayList<DAG.Node>();
+                for (DAG.Node node : layer) {
+                    DAG.Node copy = dag.makeNode(node.vertexIndex, layerIndex);
+                    copies[node.index] = copy;
+                    copiedLayer.add(copy);
+                    vertexCount = Math.max(vertexCount, node.vertexIndex + 1);
+                }
+                dag.addLayer(copiedLayer);
+            }
+            layerIndex++;
+        }
+        
+        // add the relations in the same order as build does
+        layerIndex = 0;
+        for (List<DAG.Node> layer : taller.dag) {
+            if (layerIndex >= height) {
+                break;
+            }
+            for (DAG.Node parent : layer) {
+                DAG.Node parentCopy = copies[parent.index];
+                for (DAG.Node child : parent.children) {
+                    DAG.Node childCopy = copies[child.index];
+                    int edgeColor = child.edgeColors.get(parent.vertexIndex);
+                    childCopy.addEdgeColor(parent.vertexIndex, edgeColor);
+                    parentCopy.addEdgeColor(child.vertexIndex, edgeColor);
+                    dag.addRelation(childCopy, parentCopy);
+                }
+            }
+            layerIndex++;
+        }
+        
+        // the vertices in the first layers also have the first indices
+        internalToExternal = new int[graphVertexCount];
+        externalToInternal = new int[graphVertexCount];
+        Arrays.fill(externalToInternal, -1);
+        for (int i = 0; i < vertexCount; i++) {
+            int externalIndex = taller.internalToExternal[i];
+            internalToExternal[i] = externalIndex;
+            externalToInternal[externalIndex] = i;
+        }
+        initializeLabels();
+    }
+    
+    private void initializeLabels() {
         if (invariantType == InvariantType.STRING) {
             createWithStringLabels();
         } else if (invariantType == InvariantType.INTEGER){
@@ -141,27 +415,27 @@ public abstract class AbstractVertexSignature {
     
     private void createWithIntLabels() {
         int[] vertexLabels = new int[vertexCount];
-        for (int externalIndex : vertexMapping.keySet()) {
-            int internalIndex = vertexMapping.get(externalIndex);
-            vertexLabels[internalIndex] = getIntLabel(externalIndex);
+        for (int internalIndex = 0; internalIndex < vertexCount; internalIndex++) {
+            vertexLabels[internalIndex] = 
+                getIntLabel(internalToExternal[internalIndex]);
         }
         dag.initializeWithIntLabels(vertexLabels);
     }
     
     private void createWithStringLabels() {
         String[] vertexLabels = new String[vertexCount];
-        for (int externalIndex : vertexMapping.keySet()) {
-            int internalIndex = vertexMapping.get(externalIndex);
-            vertexLabels[internalIndex] = getVertexSymbol(externalIndex);
+        for (int internalIndex = 0; internalIndex < vertexCount; internalIndex++) {
+            vertexLabels[internalIndex] = 
+                getVertexSymbol(internalToExternal[internalIndex]);
         }
         dag.initializeWithStringLabels(vertexLabels);
     }
 
     private void build(int layer, 
-            List<DAG.Node> previousLayer, List<DAG.Arc> usedArcs, int height) {
+            List<DAG.Node> previousLayer, ArcSet usedArcs, int height) {
         if (height == 0) return;
         List<DAG.Node> nextLayer = new ArrayList<DAG.Node>();
-        List<DAG.Arc> layerArcs = new ArrayList<DAG.Arc>();
+        ArcSet layerArcs = new ArcSet();
         for (DAG.Node node : previousLayer) {
             int mappedIndex = getOriginalVertexIndex(node.vertexIndex);
             int[] connected = getConnected(mappedIndex);
@@ -181,22 +455,19 @@ public abstract class AbstractVertexSignature {
     }
 
     private void addNode(int layer, DAG.Node parentNode, int vertexIndex,
-            List<DAG.Arc> layerArcs, List<DAG.Arc> usedArcs, 
-            List<DAG.Node> nextLayer) {
+            ArcSet layerArcs, ArcSet usedArcs, List<DAG.Node> nextLayer) {
         
         // look up the mapping or create a new mapping for the vertex index
-        int mappedVertexIndex;
-        if (vertexMapping.containsKey(vertexIndex)) {
-            mappedVertexIndex = vertexMapping.get(vertexIndex);
-        } else {
-            vertexMapping.put(vertexIndex, vertexCount);
+        int mappedVertexIndex = externalToInternal[vertexIndex];
+        if (mappedVertexIndex == -1) {
             mappedVertexIndex = vertexCount;
+            externalToInternal[vertexIndex] = mappedVertexIndex;
+            internalToExternal[mappedVertexIndex] = vertexIndex;
             vertexCount++;
         }
         
         // find an existing node if there is one
-        DAG.Arc arc = dag.new Arc(parentNode.vertexIndex, mappedVertexIndex);
-        if (usedArcs.contains(arc)) return;
+        if (usedArcs.contains(parentNode.vertexIndex, mappedVertexIndex)) return;
         DAG.Node existingNode = null;
         for (DAG.Node otherNode : nextLayer) {
             if (otherNode.vertexIndex == mappedVertexIndex) {
@@ -220,7 +491,7 @@ public abstract class AbstractVertexSignature {
         parentNode.addEdgeColor(mappedVertexIndex, edgeColor);
         
         dag.addRelation(existingNode, parentNode);
-        layerArcs.add(arc);
+        layerArcs.add(parentNode.vertexIndex, mappedVertexIndex);
     }
     
     /**
@@ -232,7 +503,7 @@ public abstract class AbstractVertexSignature {
         StringBuffer stringBuffer = new StringBuffer();
 //        System.out.println("CANONIZING " + 
 //                getOriginalVertexIndex(dag.getRoot().vertexIndex)
-//                + " " + vertexMapping);
+//                + " " + Arrays.toString(internalToExternal));
 //        System.out.println(dag);
         TMP_COLORING_COUNT = 0;
         this.canonize(0, stringBuffer);
@@ -244,6 +515,45 @@ public abstract class AbstractVertexSignature {
         return stringBuffer.toString();
     }
     
+    /**
+     * Convert this signature into a canonical signature string, but only if
+     * it is less than <code>upperBound</code>. Since the canonical string is
+     * the greatest of the candidate strings tried by the search, the search 
+     * stops as soon as any candidate is printed that is not less than the 
+     * bound - often after only a short prefix of it.
+     * 
+     * @param upperBound the string that the signature must be less than
+     * @return the canonical string form, or null if it is not less than the 
+     *         bound
+     */
+    public String toCanonicalStringBelow(String upperBound) {
+        ceiling = new SignatureBuffer();
+        ceiling.reset(null);
+        ceiling.append(upperBound);
+        try {
+            String canonicalString = toCanonicalString();
+            if (reachedCeiling) {
+                return null;
+            } else {
+                return canonicalString;
+            }
+        } finally {
+            ceiling = null;
+        }
+    }
+    
+    /**
+     * Make the fingerprint of the canonical signature string, hashing the 
+     * characters of the string where the search printed them rather than
+     * making the string itself.
+     * 
+     * @return the fingerprint of the canonical string
+     */
+    public Fingerprint toFingerprint() {
+        TMP_COLORING_COUNT = 0;
+        return search(0, "").toFingerprint();
+    }
+    
     public int TMP_COLORING_COUNT;
     
     /**
@@ -253,10 +563,53 @@ public abstract class AbstractVertexSignature {
      * @param canonicalVertexSignature the buffer to fill
      */
     public void canonize(int color, StringBuffer canonicalVertexSignature) {
+        SignatureBuffer best = 
+            search(color, canonicalVertexSignature.toString());
+        canonicalVertexSignature.replace(
+                0, canonicalVertexSignature.length(), best.toString());
+    }
+    
+    /**
+     * Start a search for the maximal signature string.
+     * 
+     * @param color the current color to use
+     * @param initial the string to start with as the best so far
+     * @return the buffer holding the best signature
+     */
+    private SignatureBuffer search(int color, String initial) {
+        searched = true;
+        automorphisms.clear();
+        path = new int[getVertexCount()];
+        pathLength = 0;
+        pathOrbits = null;
+        reachedCeiling = false;
+        if (budget == null || budget.isStarted()) {
+            searchBudget = budget;
+        } else {
+            searchBudget = budget.start();
+        }
+        SignatureBuffer best = new SignatureBuffer();
+        best.reset(null);
+        best.append(initial);
+        return this.canonize(color, best);
+    }
+    
+    /**
+     * Find the maximal signature string by trying all colors, printing each
+     * candidate against the best so far.
+     * 
+     * @param color the current color to use
+     * @param best the best signature found so far
+     * @return the best signature, which may be a different buffer
+     */
+    private SignatureBuffer canonize(int color, SignatureBuffer best) {
         // assume that the atom invariants have been initialized
-        if (this.getVertexCount() == 0) return;
+        if (this.getVertexCount() == 0) return best;
         
         this.dag.updateVertexInvariants();
+        if (searchBudget != null) {
+            searchBudget.chargeRefinement();
+        }
         int[] parents = dag.getParentsInFinalString();
 //        System.out.println("pars\t" + Arrays.toString(parents));
         List<Integer> orbit = this.dag.createOrbit(parents);
@@ -272,29 +625,167 @@ public abstract class AbstractVertexSignature {
             }
             
             TMP_COLORING_COUNT++;
+            if (searchBudget != null) {
+                searchBudget.chargeLeaf();
+            }
         
-            // Creating the root signature string.
-            String signature = this.toString();
-            int cmp = signature.compareTo(canonicalVertexSignature.toString()); 
-            int l = canonicalVertexSignature.length();
+            // Creating the root signature string - if it beats the best, 
+            // the buffers are swapped rather than copied
+            if (leafBuffer == null) {
+                leafBuffer = new SignatureBuffer();
+            }
+            SignatureBuffer signature = leafBuffer;
+            signature.reset(best, ceiling);
+            print(signature, this.dag.getRoot(), null, new ArcSet());
+            if (ceiling != null && signature.compareToCeiling() >= 0) {
+                reachedCeiling = true;
+                return best;
+            }
+            int cmp = signature.compareToBound();
             if (cmp > 0) {
-//                System.out.println(TMP_COLORING_COUNT + " replacing " + signature + " old= " + canonicalVertexSignature);
-                canonicalVertexSignature.replace(0, l, signature);
+                if (recordingLabelling) {
+                    bestLabelling = labelCurrentLeaf();
+                }
+                leafBuffer = best;
+                return signature;
             } else {
-//                System.out.println(TMP_COLORING_COUNT + " rejecting " + cmp + " " + signature);
+                if (cmp == 0) {
+                    addAutomorphism(signature, best);
+                }
+                return best;
             }
-            return;
         } else {
 //            System.out.println("setting color " + color + " for orbit " + orbit);
+            // below the full height, the permutations found may not be
+            // automorphisms of the graph, so they cannot be used to prune
+            boolean pruning = automorphismPruning && height == -1;
+            List<Integer> searchedOrbits = new ArrayList<Integer>();
             for (int o : orbit) {
 //                System.out.println("setting color " + color + " for element " + o);
+                if (pruning && isEquivalentToAny(o, searchedOrbits)) {
+                    continue;
+                }
+                searchedOrbits.add(o);
+                path[pathLength] = o;
+                pathLength++;
+                pathOrbits = null;
                 this.dag.setColor(o, color);
-                Invariants invariantsCopy = this.dag.copyInvariants();
-                this.canonize(color + 1, canonicalVertexSignature);
-                this.dag.setInvariants(invariantsCopy);
-                this.dag.setColor(o, -1);
+                this.dag.saveInvariants();
+                try {
+                    best = this.canonize(color + 1, best);
+                } finally {
+                    // also undone if the search is stopped by the budget
+                    this.dag.restoreInvariants();
+                    this.dag.setColor(o, -1);
+                    pathLength--;
+                    pathOrbits = null;
+                }
+                if (reachedCeiling) {
+                    break;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Record the automorphism that maps the vertices of one printed signature
+     * to those of an equal one, position by position. Since every vertex that
+     * is printed more than once has a distinct color by then, the mapping is
+     * a permutation, but it is checked to be one anyway.
+     * 
+     * @param signature the signature that was just printed
+     * @param best the equal best signature
+     */
+    private void addAutomorphism(SignatureBuffer signature, SignatureBuffer best) {
+        int n = getVertexCount();
+        if (signature.getVertexCount() != best.getVertexCount()) return;
+        int[] automorphism = new int[n];
+        Arrays.fill(automorphism, -1);
+        boolean[] isImage = new boolean[n];
+        for (int i = 0; i < signature.getVertexCount(); i++) {
+            int from = signature.getVertex(i);
+            int to = best.getVertex(i);
+            if (automorphism[from] == -1 && !isImage[to]) {
+                automorphism[from] = to;
+                isImage[to] = true;
+            } else if (automorphism[from] != to) {
+                return;
+            }
+        }
+        boolean isIdentity = true;
+        for (int i = 0; i < n; i++) {
+            if (automorphism[i] == -1) {
+                return;
+            } else if (automorphism[i] != i) {
+                isIdentity = false;
+            }
+        }
+        if (!isIdentity) {
+            automorphisms.add(automorphism);
+        }
+    }
+    
+    /**
+     * Check if a vertex is in the same orbit as any of a list of vertices, 
+     * under the group made by the automorphisms found so far that fix every
+     * vertex on the current path. Branches for vertices in the same orbit
+     * give the same signature strings.
+     * 
+     * @param vertex the vertex to check
+     * @param searched the vertices that have been searched already
+     * @return true if the vertex is equivalent to a searched vertex
+     */
+    private boolean isEquivalentToAny(int vertex, List<Integer> searched) {
+        if (searched.isEmpty() || automorphisms.isEmpty()) return false;
+        if (pathOrbits == null 
+                || pathOrbitsAutomorphismCount != automorphisms.size()) {
+            int n = getVertexCount();
+            pathOrbits = new int[n];
+            for (int i = 0; i < n; i++) {
+                pathOrbits[i] = i;
+            }
+            for (int[] automorphism : automorphisms) {
+                if (fixesPath(automorphism)) {
+                    for (int i = 0; i < n; i++) {
+                        union(pathOrbits, i, automorphism[i]);
+                    }
+                }
+            }
+            pathOrbitsAutomorphismCount = automorphisms.size();
+        }
+        int orbit = find(pathOrbits, vertex);
+        for (int other : searched) {
+            if (find(pathOrbits, other) == orbit) {
+                return true;
             }
         }
+        return false;
+    }
+    
+    private boolean fixesPath(int[] automorphism) {
+        for (int i = 0; i < pathLength; i++) {
+            if (automorphism[path[i]] != path[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int find(int[] forest, int i) {
+        while (forest[i] != i) {
+            forest[i] = forest[forest[i]];
+            i = forest[i];
+        }
+        return i;
+    }
+    
+    private static void union(int[] forest, int i, int j) {
+        int rootI = find(forest, i);
+        int rootJ = find(forest, j);
+        if (rootI != rootJ) {
+            forest[Math.max(rootI, rootJ)] = Math.min(rootI, rootJ);
+        }
     }
 
     /**
@@ -311,11 +802,17 @@ public abstract class AbstractVertexSignature {
      */
     public int[] getCanonicalLabelling(int totalVertexCount) {
         // TODO : get the totalVertexCount from the graph?
-        canonize(0, new StringBuffer());
-        CanonicalLabellingVisitor labeller = 
-            new CanonicalLabellingVisitor(getVertexCount(), dag.nodeComparator);
-        this.dag.accept(labeller);
-        int[] internalLabels = labeller.getLabelling();
+        recordingLabelling = true;
+        bestLabelling = null;
+        try {
+            canonize(0, new StringBuffer());
+        } finally {
+            recordingLabelling = false;
+        }
+        int[] internalLabels = bestLabelling;
+        if (internalLabels == null) {
+            internalLabels = labelCurrentLeaf();
+        }
         int[] externalLabels = new int[totalVertexCount];
         Arrays.fill(externalLabels, -1);
         for (int i = 0; i < getVertexCount(); i++) {
@@ -325,6 +822,19 @@ public abstract class AbstractVertexSignature {
         return externalLabels;    
     }
     
+    /**
+     * Label the vertices in the order that the DAG is visited in, with the
+     * children in the order that the last printed signature put them in.
+     * 
+     * @return the labelling, by internal vertex index
+     */
+    private int[] labelCurrentLeaf() {
+        CanonicalLabellingVisitor labeller = 
+            new CanonicalLabellingVisitor(getVertexCount(), dag.nodeComparator);
+        this.dag.accept(labeller);
+        return labeller.getLabelling();
+    }
+    
     public void accept(DAGVisitor visitor) {
         dag.accept(visitor);
     }
@@ -391,14 +901,13 @@ public abstract class AbstractVertexSignature {
     /**
      * Recursively print the signature into the buffer.
      * 
-     * @param buffer the string buffer to print into
+     * @param buffer the buffer to print into
      * @param node the current node of the signature
      * @param parent the parent node, or null
-     * @param arcs the list of already visited arcs
-     * @param colorMap a map between pre-printed colors and printed colors
+     * @param arcs the set of already visited arcs
      */
-    private void print(StringBuffer buffer, DAG.Node node,
-            DAG.Node parent, List<DAG.Arc> arcs) {
+    private void print(SignatureBuffer buffer, DAG.Node node,
+            DAG.Node parent, ArcSet arcs) {
         int vertexIndex = getOriginalVertexIndex(node.vertexIndex);
         
         // print out any symbol for the edge in the input graph
@@ -409,6 +918,7 @@ public abstract class AbstractVertexSignature {
         
         // print out the text that represents the node itself
         buffer.append(AbstractVertexSignature.START_NODE_SYMBOL);
+        buffer.addVertex(node.vertexIndex);
         buffer.append(getVertexSymbol(vertexIndex));
         int color = dag.colorFor(node.vertexIndex);
         if (color != -1) {
@@ -423,16 +933,19 @@ public abstract class AbstractVertexSignature {
         // now print the sorted children, surrounded by branch symbols
         boolean addedBranchSymbol = false;
         for (DAG.Node child : node.children) {
-            DAG.Arc arc = dag.new Arc(node.vertexIndex, child.vertexIndex);
-            if (arcs.contains(arc)) {
+            if (arcs.contains(node.vertexIndex, child.vertexIndex)) {
                 continue;
             } else {
                 if (!addedBranchSymbol) {
                     buffer.append(AbstractVertexSignature.START_BRANCH_SYMBOL);
                     addedBranchSymbol = true;
                 }
-                arcs.add(arc);
+                arcs.add(node.vertexIndex, child.vertexIndex);
                 print(buffer, child, node, arcs);
+                if ((prefixPruning && buffer.isBelowBound()) 
+                        || buffer.isAboveCeiling()) {
+                    return;
+                }
             }
         }
         if (addedBranchSymbol) {
@@ -444,8 +957,9 @@ public abstract class AbstractVertexSignature {
      * Convert this vertex signature into a signature string.
      */
     public String toString() {
-        StringBuffer buffer = new StringBuffer();
-        print(buffer, this.dag.getRoot(), null, new ArrayList<DAG.Arc>());
+        SignatureBuffer buffer = new SignatureBuffer();
+        buffer.reset(null);
+        print(buffer, this.dag.getRoot(), null, new ArcSet());
         return buffer.toString();
     }
     
@@ -0,0 +1,147 @@
+package signature;
+
+import java.util.Arrays;
+
+/**
+ * A set of undirected arcs between vertex indices, used to record which arcs
+ * of the DAG have already been traversed when building or printing a
+ * signature. Each arc is packed into a single long of (min, max) so that the
+ * set can be held in an open-addressed table of primitives.
+ */
+public class ArcSet {
+
+    /**
+     * Marks an empty slot in the table - no packed arc can have this value,
+     * as vertex indices are never negative
+     */
+    private static final long EMPTY = -1L;
+
+    private long[] table;
+
+    private int size;
+
+    /**
+     * Make an empty arc set.
+     */
+    public ArcSet() {
+        this(16);
+    }
+
+    /**
+     * Make an empty arc set with room for at least <code>capacity</code> arcs
+     * before the table has to grow.
+     *
+     * @param capacity the expected number of arcs
+     */
+    public ArcSet(int capacity) {
+        int tableSize = 16;
+        while (tableSize < capacity * 2) {
+            tableSize <<= 1;
+        }
+        this.table = new long[tableSize];
+        Arrays.fill(table, EMPTY);
+        this.size = 0;
+    }
+
+    /**
+     * Pack the arc between a and b into a long, regardless of direction.
+     *
+     * @param a one vertex index
+     * @param b the other vertex index
+     * @return the arc as a long
+     */
+    public static long pack(int a, int b) {
+        if (a < b) {
+            return ((long) a << 32) | (b & 0xffffffffL);
+        } else {
+            return ((long) b << 32) | (a & 0xffffffffL);
+        }
+    }
+
+    /**
+     * Check for the arc between a and b.
+     *
+     * @param a one vertex index
+     * @param b the other vertex index
+     * @return true if the arc is in the set
+     */
+    public boolean contains(int a, int b) {
+        long key = pack(a, b);
+        int mask = table.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long existing = table[i];
+            if (existing == key) {
+                return true;
+            } else if (existing == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Add the arc between a and b.
+     *
+     * @param a one vertex index
+     * @param b the other vertex index
+     * @return true if the arc was not already in the set
+     */
+    public boolean add(int a, int b) {
+        return addPacked(pack(a, b));
+    }
+
+    /**
+     * Add all the arcs in another set to this one.
+     *
+     * @param other the set of arcs to add
+     */
+    public void addAll(ArcSet other) {
+        for (long key : other.table) {
+            if (key != EMPTY) {
+                addPacked(key);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private boolean addPacked(long key) {
+        int mask = table.length - 1;
+        int i = slot(key, mask);
+        while (table[i] != EMPTY) {
+            if (table[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = key;
+        size++;
+        if (size * 2 > table.length) {
+            grow();
+        }
+        return true;
+    }
+
+    private void grow() {
+        long[] oldTable = table;
+        table = new long[oldTable.length * 2];
+        Arrays.fill(table, EMPTY);
+        size = 0;
+        for (long key : oldTable) {
+            if (key != EMPTY) {
+                addPacked(key);
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+}
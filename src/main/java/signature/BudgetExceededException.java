@@ -0,0 +1,56 @@
+package signature;
+
+/**
+ * Thrown when a canonization search passes one of the limits of its
+ * {@link SearchBudget}, or finds that its thread has been interrupted - the
+ * interrupt is left set, for the caller to see. The signature is left in the
+ * same state as after a complete search, so it can still be used - for
+ * example, with a larger budget.
+ */
+public class BudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Limit { TIME, LEAVES, REFINEMENTS, INTERRUPTED };
+
+    private final Limit limit;
+
+    private final long elapsedMillis;
+
+    private final int leafCount;
+
+    private final int refinementCount;
+
+    public BudgetExceededException(Limit limit, long elapsedMillis, 
+            int leafCount, int refinementCount) {
+        super(((limit == Limit.INTERRUPTED) ? 
+                    "Canonization was interrupted after " 
+                  : "Canonization passed the " + limit + " limit after ")
+                + elapsedMillis + "ms, " + leafCount + " leaves and " 
+                + refinementCount + " refinements");
+        this.limit = limit;
+        this.elapsedMillis = elapsedMillis;
+        this.leafCount = leafCount;
+        this.refinementCount = refinementCount;
+    }
+
+    /**
+     * @return the limit that was passed
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public int getLeafCount() {
+        return leafCount;
+    }
+
+    public int getRefinementCount() {
+        return refinementCount;
+    }
+
+}
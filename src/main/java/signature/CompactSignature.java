@@ -0,0 +1,160 @@
+package signature;
+
+import java.util.Arrays;
+
+/**
+ * A signature string stored as bytes, rather than as text. The characters of
+ * the signature strings are almost always ASCII, and each of these is a 
+ * single byte - half the size of a char. Any other character is three bytes,
+ * the first of which is greater than any ASCII byte.
+ *
+ * The encoding keeps the order of the strings : two compact signatures are 
+ * equal if and only if their signature strings are equal, and comparing their
+ * bytes (as unsigned numbers) gives the same order as comparing the strings. 
+ * So a canonical (minimal) string can be found without decoding them.
+ */
+public class CompactSignature implements Comparable<CompactSignature> {
+
+    /**
+     * The largest character that is encoded as a single byte
+     */
+    private static final char MAX_SINGLE_BYTE = 0x7f;
+
+    /**
+     * The bytes
+     */
+    private final byte[] code;
+
+    private final int hashCode;
+
+    private CompactSignature(byte[] code) {
+        this.code = code;
+        this.hashCode = Arrays.hashCode(code);
+    }
+
+    /**
+     * Encode a signature string.
+     *
+     * @param signatureString the signature string
+     * @return the compact form of the signature
+     */
+    public static CompactSignature encode(String signatureString) {
+        int n = signatureString.length();
+        int length = n;
+        for (int i = 0; i < n; i++) {
+            if (signatureString.charAt(i) > MAX_SINGLE_BYTE) {
+                length += 2;
+            }
+        }
+        byte[] code = new byte[length];
+        int position = 0;
+        for (int i = 0; i < n; i++) {
+            char c = signatureString.charAt(i);
+            if (c <= MAX_SINGLE_BYTE) {
+                code[position++] = (byte) c;
+            } else {
+                // the top four bits, then two lots of six, so that the first
+                // byte is 0x80 to 0x8f and the order of the chars is kept
+                code[position++] = (byte) (0x80 | (c >>> 12));
+                code[position++] = (byte) ((c >>> 6) & 0x3f);
+                code[position++] = (byte) (c & 0x3f);
+            }
+        }
+        return new CompactSignature(code);
+    }
+
+    /**
+     * @return the number of bytes used to encode the signature
+     */
+    public int getCodeLength() {
+        return code.length;
+    }
+
+    /**
+     * Check that this is the compact form of a signature string, without 
+     * encoding the string.
+     * 
+     * @param signatureString the string to check
+     * @return true if the string is the same as this signature's string
+     */
+    public boolean matches(String signatureString) {
+        int n = signatureString.length();
+        int position = 0;
+        for (int i = 0; i < n; i++) {
+            if (position == code.length) {
+                return false;
+            }
+            char c = signatureString.charAt(i);
+            if (c <= MAX_SINGLE_BYTE) {
+                if (code[position] != (byte) c) {
+                    return false;
+                }
+                position++;
+            } else {
+                if (position + 3 > code.length || readChar(position) != c) {
+                    return false;
+                }
+                position += 3;
+            }
+        }
+        return position == code.length;
+    }
+
+    /**
+     * Compare the bytes as unsigned numbers, which is the order of the 
+     * strings. (Arrays.compareUnsigned does this, but is not in Java 8.)
+     */
+    public int compareTo(CompactSignature other) {
+        int length = Math.min(code.length, other.code.length);
+        for (int i = 0; i < length; i++) {
+            if (code[i] != other.code[i]) {
+                return (code[i] & 0xff) - (other.code[i] & 0xff);
+            }
+        }
+        return code.length - other.code.length;
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        } else if (o instanceof CompactSignature) {
+            CompactSignature other = (CompactSignature) o;
+            return hashCode == other.hashCode
+                && Arrays.equals(code, other.code);
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * Decode the signature string.
+     */
+    public String toString() {
+        StringBuilder builder = new StringBuilder(code.length);
+        int position = 0;
+        while (position < code.length) {
+            if (code[position] >= 0) {
+                builder.append((char) code[position]);
+                position++;
+            } else {
+                builder.append(readChar(position));
+                position += 3;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the character encoded as three bytes at a position
+     */
+    private char readChar(int position) {
+        return (char) (((code[position] & 0x0f) << 12)
+                | (code[position + 1] << 6)
+                | code[position + 2]);
+    }
+
+}
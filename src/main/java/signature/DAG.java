@@ -1,12 +1,14 @@
 package signature;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
 
 /**
  * A directed acyclic graph that is the core data structure of a signature. It
@@ -22,6 +24,15 @@ public class DAG implements Iterable<List<DAG.Node>> {
      *
      */
     public enum Direction { UP, DOWN };
+    
+    /**
+     * How nodes and vertices are ranked by their invariants. SORT sorts lists
+     * of invariant objects, while PARTITION keeps an ordered partition of
+     * each layer and of the vertices, and only splits the cells whose keys
+     * have changed. Both give the same ranks. SORT is the default, and 
+     * PARTITION has to be chosen.
+     */
+    public enum RankingMethod { SORT, PARTITION };
 	
 	/**
 	 * A node of the directed acyclic graph
@@ -29,6 +40,13 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	 */
 	public class Node implements VisitableDAG {
 		
+		/**
+		 * The index of this node in the DAG. Nodes are numbered densely, in
+		 * the order they were made, so this can be used directly as an index
+		 * into the node invariants
+		 */
+		public final int index;
+		
 		/**
 		 * The index of the vertex in the graph. Note that for signatures that
 		 * cover only part of the graph (with a height less than the diameter)
@@ -64,10 +82,12 @@ public class DAG implements Iterable<List<DAG.Node>> {
 		/**
 		 * Make a Node that refers to a vertex, in a layer, and with a label.
 		 * 
+		 * @param index the index of the node in the DAG
 		 * @param vertexIndex the graph vertex index
 		 * @param layer the layer of this Node
 		 */
-		public Node(int vertexIndex, int layer) {
+		public Node(int index, int vertexIndex, int layer) {
+			this.index = index;
 			this.vertexIndex = vertexIndex;
 			this.layer = layer;
 			this.parents = new ArrayList<Node>();
@@ -146,6 +166,11 @@ public class DAG implements Iterable<List<DAG.Node>> {
 				return false;
 			}
 		}
+		
+		public int hashCode() {
+		    long packed = ArcSet.pack(a, b);
+		    return (int) (packed ^ (packed >>> 32));
+		}
 	}
 	
 	/**
@@ -247,6 +272,119 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	 */
 	private int vertexCount;
 	
+	/**
+	 * Scratch space for ranking the nodes in a layer
+	 */
+	private InvariantList[] invariantListPool = new InvariantList[0];
+	
+	private RankingMethod rankingMethod = RankingMethod.SORT;
+	
+	private final PartitionRefiner refiner = new PartitionRefiner();
+	
+	/**
+	 * A stack of saved invariants, which are kept for reuse when popped
+	 */
+	private final List<Invariants> savedInvariants = new ArrayList<Invariants>();
+	
+	private int savedInvariantsCount;
+	
+	/**
+	 * Scratch space for the vertex invariants from the last refinement pass
+	 */
+	private int[] previousVertexInvariants = new int[0];
+	
+	/**
+	 * Scratch space for the keys passed to the refiner
+	 */
+	private int[] keys = new int[0];
+	
+	private int[] keyStart = new int[0];
+	
+	private int[] keyLength = new int[0];
+	
+	private int[] ranks = new int[0];
+	
+	/**
+	 * The ordered partitions of the nodes in each layer, for the sweeps up and
+	 * down the DAG, and of the vertices after each sweep. They are made by the
+	 * first refinement with the PARTITION method and kept between passes and
+	 * refinements, so that only the cells with changed keys are split.
+	 */
+	private OrderedPartition[] upPartitions;
+	
+	private OrderedPartition[] downPartitions;
+	
+	private OrderedPartition upVertexPartition;
+	
+	private OrderedPartition downVertexPartition;
+	
+	/**
+	 * The indices of the nodes in each layer, and the position of each node
+	 * in its layer, which is its item in the partition for the layer
+	 */
+	private int[][] layerNodes;
+	
+	private int[] layerPositions;
+	
+	/**
+	 * The sorted colors of the edges to the children and parents of each node
+	 */
+	private int[][] childEdgeColors;
+	
+	private int[][] parentEdgeColors;
+	
+	/**
+	 * The vertex for each item of the vertex partitions, and its nodes
+	 */
+	private int[] itemVertices;
+	
+	private int[][] itemNodes;
+	
+	/**
+	 * The item of each vertex in the vertex partitions, or -1
+	 */
+	private int[] vertexItems;
+	
+	/**
+	 * The worklist of each layer, as positions in the layer, marked off for
+	 * each sweep in nodeMarks; vertex items are marked off in itemMarks
+	 */
+	private int[][] dirtyNodes;
+	
+	private int[] dirtyCounts;
+	
+	private int[] nodeMarks;
+	
+	private int[] itemMarks;
+	
+	private int mark;
+	
+	/**
+	 * The color of each vertex item at the last refinement, and the items 
+	 * whose colors have changed since
+	 */
+	private int[] refinedColors;
+	
+	private int[] coloredItems;
+	
+	private int coloredCount;
+	
+	/**
+	 * The partitions saved with each of the saved invariants
+	 */
+	private final List<SavedPartitions> savedPartitions = 
+	    new ArrayList<SavedPartitions>();
+	
+	/**
+	 * Scratch space for the key of one node or vertex
+	 */
+	private int[] keyBuffer;
+	
+	/**
+	 * The number of node and vertex keys made by the PARTITION method
+	 */
+	private int keyCount;
+	
     /**
      * Create a DAG from a graph, starting at the root vertex.
      * 
@@ -257,16 +395,29 @@ public class DAG implements Iterable<List<DAG.Node>> {
 		this.layers = new ArrayList<List<Node>>();
 		this.nodes = new ArrayList<Node>();
 		List<Node> rootLayer = new ArrayList<Node>();
-		Node rootNode = new Node(rootVertexIndex, 0);
+		Node rootNode = makeNode(rootVertexIndex, 0);
 		rootLayer.add(rootNode);
 		this.layers.add(rootLayer);
-		this.nodes.add(rootNode);
 		
 		this.vertexCount = 1;
 		this.parentCounts = new int[graphVertexCount];
 		this.childCounts = new int[graphVertexCount];
 	}
 	
+	/**
+	 * Create a DAG from a graph, starting at the root vertex, that ranks its
+	 * invariants with the given method.
+	 * 
+	 * @param rootVertexIndex the vertex to start from
+	 * @param graphVertexCount the number of vertices in the original graph
+	 * @param rankingMethod the method used to rank nodes and vertices
+	 */
+	public DAG(int rootVertexIndex, int graphVertexCount, 
+	        RankingMethod rankingMethod) {
+	    this(rootVertexIndex, graphVertexCount);
+	    this.rankingMethod = rankingMethod;
+	}
+	
 	public Iterator<List<Node>> iterator() {
 		return layers.iterator();
 	}
@@ -279,6 +430,20 @@ public class DAG implements Iterable<List<DAG.Node>> {
 		return this.layers.get(0).get(0);
 	}
 	
+	public RankingMethod getRankingMethod() {
+	    return rankingMethod;
+	}
+	
+	/**
+	 * Set the method used to rank nodes and vertices by their invariants.
+	 * 
+	 * @param rankingMethod the method to use
+	 */
+	public void setRankingMethod(RankingMethod rankingMethod) {
+	    this.rankingMethod = rankingMethod;
+	    clearPartitions();
+	}
+	
 	public Invariants copyInvariants() {
 	    return (Invariants) this.invariants.clone();
 	}
@@ -290,6 +455,33 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	public void initializeWithStringLabels(String[] vertexLabels) {
 	    vertexCount = vertexLabels.length;
 	    this.invariants = new Invariants(vertexCount, nodes.size());
+	    clearPartitions();
+	    
+	    if (rankingMethod == RankingMethod.PARTITION) {
+	        if (vertexCount == 0) return;
+	        nodeComparator = new NodeStringLabelComparator(vertexLabels);
+	        
+	        // replace the labels with their positions in the sorted labels,
+	        // with any null labels together in a cell before the others
+	        TreeSet<String> labelSet = new TreeSet<String>();
+	        for (String label : vertexLabels) {
+	            if (label != null) {
+	                labelSet.add(label);
+	            }
+	        }
+	        String[] sortedLabels = labelSet.toArray(new String[0]);
+	        int[] labelRanks = new int[vertexCount];
+	        for (int i = 0; i < vertexCount; i++) {
+	            if (vertexLabels[i] == null) {
+	                labelRanks[i] = -1;
+	            } else {
+	                labelRanks[i] = 
+	                    Arrays.binarySearch(sortedLabels, vertexLabels[i]);
+	            }
+	        }
+	        rankByLabelAndParentCount(labelRanks);
+	        return;
+	    }
 	    
         List<InvariantIntStringPair> pairs = 
             new ArrayList<InvariantIntStringPair>();
@@ -319,6 +511,14 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	public void initializeWithIntLabels(int[] vertexLabels) {
 	    vertexCount = vertexLabels.length;
         this.invariants = new Invariants(vertexCount, nodes.size());
+        clearPartitions();
+        
+        if (rankingMethod == RankingMethod.PARTITION) {
+            if (vertexCount == 0) return;
+            nodeComparator = new NodeIntegerLabelComparator(vertexLabels);
+            rankByLabelAndParentCount(vertexLabels);
+            return;
+        }
         
         List<InvariantIntIntPair> pairs = new ArrayList<InvariantIntIntPair>();
         for (int i = 0; i < vertexCount; i++) {
@@ -344,6 +544,38 @@ public class DAG implements Iterable<List<DAG.Node>> {
         }
 	}
 	
+	/**
+	 * Set the initial vertex invariants from the rank of each vertex by its
+	 * label and then by its count of parents.
+	 * 
+	 * @param vertexLabels the labels, as ints with the same order
+	 */
+	private void rankByLabelAndParentCount(int[] vertexLabels) {
+	    ensureKeys(vertexCount, vertexCount * 2);
+	    for (int i = 0; i < vertexCount; i++) {
+	        keyStart[i] = i * 2;
+	        keyLength[i] = 2;
+	        keys[i * 2] = vertexLabels[i];
+	        keys[i * 2 + 1] = parentCounts[i];
+	    }
+	    refiner.rank(vertexCount, keys, keyStart, keyLength, ranks);
+	    for (int i = 0; i < vertexCount; i++) {
+	        invariants.setVertexInvariant(i, ranks[i]);
+	    }
+	}
+	
+	private void ensureKeys(int itemCount, int keySize) {
+	    if (keys.length < keySize) {
+	        keys = new int[Math.max(keySize, keys.length * 2)];
+	    }
+	    if (keyStart.length < itemCount) {
+	        int size = Math.max(itemCount, keyStart.length * 2);
+	        keyStart = new int[size];
+	        keyLength = new int[size];
+	        ranks = new int[size];
+	    }
+	}
+	
     public void setColor(int vertexIndex, int color) {
 	    this.invariants.setColor(vertexIndex, color);
 	}
@@ -360,9 +592,37 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	
 	public void setInvariants(Invariants invariants) {
 //	    this.invariants = invariants;
-	    this.invariants.colors = invariants.colors.clone();
-	    this.invariants.nodeInvariants = invariants.nodeInvariants.clone();
-	    this.invariants.vertexInvariants = invariants.vertexInvariants.clone();
+	    invariants.copyTo(this.invariants);
+	    clearPartitions();
+	}
+	
+	/**
+	 * Save the current invariants on a stack, to be put back later by 
+	 * {@link #restoreInvariants()}. This does the same as 
+	 * {@link #copyInvariants()} and {@link #setInvariants(Invariants)}, but the
+	 * saved copies are reused, so searching does not make a new copy for each
+	 * branch. The partitions kept by the PARTITION method are saved as well,
+	 * so that a refinement after the restore starts from where they were.
+	 */
+	public void saveInvariants() {
+	    if (savedInvariantsCount == savedInvariants.size()) {
+	        savedInvariants.add(copyInvariants());
+	        savedPartitions.add(new SavedPartitions());
+	    } else {
+	        invariants.copyTo(savedInvariants.get(savedInvariantsCount));
+	    }
+	    savedPartitions.get(savedInvariantsCount).save();
+	    savedInvariantsCount++;
+	}
+	
+	/**
+	 * Put back the invariants most recently saved by 
+	 * {@link #saveInvariants()}.
+	 */
+	public void restoreInvariants() {
+	    savedInvariantsCount--;
+	    savedInvariants.get(savedInvariantsCount).copyTo(this.invariants);
+	    savedPartitions.get(savedInvariantsCount).restore();
 	}
 	
 	/**
@@ -375,7 +635,8 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	 */
 	
 	public DAG.Node makeNode(int vertexIndex, int layer) {
-        DAG.Node node = new DAG.Node(vertexIndex, layer);
+	    clearPartitions();
+        DAG.Node node = new DAG.Node(nodes.size(), vertexIndex, layer);
         this.nodes.add(node);
         return node;
     }
@@ -399,6 +660,7 @@ public class DAG implements Iterable<List<DAG.Node>> {
     }
 	
 	public void addRelation(DAG.Node childNode, DAG.Node parentNode) {
+	    clearPartitions();
 	    childNode.parents.add(parentNode);
 	    parentCounts[childNode.vertexIndex]++;
 	    childCounts[parentNode.vertexIndex]++;
@@ -408,22 +670,18 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	public int[] getParentsInFinalString() {
 	    int[] counts = new int[vertexCount];
 	    getParentsInFinalString(
-	            counts, getRoot(), null,  new ArrayList<DAG.Arc>());
+	            counts, getRoot(), null, new ArcSet());
 	    return counts;
 	}
 	
 	private void getParentsInFinalString(int[] counts, DAG.Node node,
-            DAG.Node parent, List<DAG.Arc> arcs) {
+            DAG.Node parent, ArcSet arcs) {
 	    if (parent != null) {
 	        counts[node.vertexIndex]++;
 	    }
 	    Collections.sort(node.children, nodeComparator);
 	    for (DAG.Node child : node.children) {
-            DAG.Arc arc = new Arc(node.vertexIndex, child.vertexIndex);
-            if (arcs.contains(arc)) {
-                continue;
-            } else {
-                arcs.add(arc);
+            if (arcs.add(node.vertexIndex, child.vertexIndex)) {
                 getParentsInFinalString(counts, child, node, arcs);
             }
         }
@@ -439,20 +697,16 @@ public class DAG implements Iterable<List<DAG.Node>> {
      */
     public int[] getOccurrences() {
         int[] occurences = new int[vertexCount];
-        getOccurences(occurences, getRoot(), null, new ArrayList<DAG.Arc>());
+        getOccurences(occurences, getRoot(), null, new ArcSet());
         return occurences;
     }
     
     private void getOccurences(int[] occurences, DAG.Node node,
-            DAG.Node parent, List<DAG.Arc> arcs) {
+            DAG.Node parent, ArcSet arcs) {
         occurences[node.vertexIndex]++;
         Collections.sort(node.children, nodeComparator);
         for (DAG.Node child : node.children) {
-            DAG.Arc arc = new Arc(node.vertexIndex, child.vertexIndex);
-            if (arcs.contains(arc)) {
-                continue;
-            } else {
-                arcs.add(arc);
+            if (arcs.add(node.vertexIndex, child.vertexIndex)) {
                 getOccurences(occurences, child, node, arcs);
             }
         }
@@ -481,6 +735,7 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	}
 
 	public void addLayer(List<Node> layer) {
+	    clearPartitions();
 		this.layers.add(layer);
 	}
 	
@@ -524,23 +779,25 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	}
 	
 	public void computeVertexInvariants() {
-	    Map<Integer, int[]> layerInvariants = new HashMap<Integer, int[]>();
-	    for (int i = 0; i < this.nodes.size(); i++) {
-	        DAG.Node node = this.nodes.get(i);
+	    clearPartitions();
+	    if (rankingMethod == RankingMethod.PARTITION) {
+	        computeVertexInvariantsByPartition();
+	        return;
+	    }
+	    int[][] layerInvariants = new int[vertexCount][];
+	    for (DAG.Node node : this.nodes) {
 	        int j = node.vertexIndex;
-	        int[] layerInvariantsJ;
-	        if (layerInvariants.containsKey(j)) {
-	            layerInvariantsJ = layerInvariants.get(j);
-	        } else {
-	            layerInvariantsJ = new int[this.layers.size()];
-	            layerInvariants.put(j, layerInvariantsJ);
+	        if (layerInvariants[j] == null) {
+	            layerInvariants[j] = new int[this.layers.size()];
 	        }
-	        layerInvariantsJ[node.layer] = invariants.getNodeInvariant(i); 
+	        layerInvariants[j][node.layer] = 
+	            invariants.getNodeInvariant(node.index); 
 	    }
 	    
 	    List<InvariantArray> invariantLists = new ArrayList<InvariantArray>();
-	    for (int i : layerInvariants.keySet()) {
-	        InvariantArray invArr = new InvariantArray(layerInvariants.get(i), i); 
+	    for (int i = 0; i < vertexCount; i++) {
+	        if (layerInvariants[i] == null) continue;
+	        InvariantArray invArr = new InvariantArray(layerInvariants[i], i); 
 	        invariantLists.add(invArr);
 	    }
 	    Collections.sort(invariantLists);
@@ -559,11 +816,56 @@ public class DAG implements Iterable<List<DAG.Node>> {
 
 	}
 	
+	private void computeVertexInvariantsByPartition() {
+	    // the key for a vertex is the invariant of its node in each layer, 
+	    // or zero for layers that it does not appear in 
+	    int layerCount = this.layers.size();
+	    ensureKeys(vertexCount, vertexCount * layerCount);
+	    Arrays.fill(keys, 0, vertexCount * layerCount, 0);
+	    boolean[] seen = new boolean[vertexCount];
+	    for (DAG.Node node : this.nodes) {
+	        seen[node.vertexIndex] = true;
+	        keys[node.vertexIndex * layerCount + node.layer] = 
+	            invariants.getNodeInvariant(node.index);
+	    }
+	    
+	    int[] itemVertices = new int[vertexCount];
+	    int itemCount = 0;
+	    for (int i = 0; i < vertexCount; i++) {
+	        if (!seen[i]) continue;
+	        itemVertices[itemCount] = i;
+	        keyStart[itemCount] = i * layerCount;
+	        keyLength[itemCount] = layerCount;
+	        itemCount++;
+	    }
+	    refiner.rank(itemCount, keys, keyStart, keyLength, ranks);
+	    for (int i = 0; i < itemCount; i++) {
+	        invariants.setVertexInvariant(itemVertices[i], ranks[i]);
+	    }
+	}
+	
 	public void updateVertexInvariants() {
-	    int[] oldInvariants = new int[vertexCount];
+	    if (previousVertexInvariants.length != vertexCount) {
+	        previousVertexInvariants = new int[vertexCount];
+	    }
+	    if (rankingMethod == RankingMethod.PARTITION) {
+	        updateVertexInvariantsByPartition();
+	    } else {
+	        updateVertexInvariantsBySorting();
+	    }
+	    
+	    // finally, copy the node invariants into the nodes, for easy sorting
+	    for (DAG.Node node : this.nodes) {
+	        node.invariant = invariants.getNodeInvariant(node.index);
+	    }
+	}
+	
+	private void updateVertexInvariantsBySorting() {
+	    int[] oldInvariants = previousVertexInvariants;
 	    boolean invariantSame = true;
 	    while (invariantSame) {
-	        oldInvariants = invariants.getVertexInvariantCopy();
+	        System.arraycopy(invariants.getVertexInvariants(), 0, 
+	                oldInvariants, 0, vertexCount);
 	        
 	        updateNodeInvariants(Direction.UP); // From the leaves to the root
 	        
@@ -582,10 +884,404 @@ public class DAG implements Iterable<List<DAG.Node>> {
 //	               "invs\t" +
 //	               java.util.Arrays.toString(invariants.getVertexInvariants()));
 	    }
+	}
+	
+	/**
+	 * Refine the invariants in the same passes as the sorting method, but
+	 * with an ordered partition for each layer and for the vertices that is
+	 * kept from pass to pass, and from each refinement to the next. Each 
+	 * pass only makes new keys for the items on a worklist : the nodes and
+	 * vertices whose color changed since the last refinement, or that depend
+	 * on an item whose label changed - the splitters of the partitions they 
+	 * use. So a pass only re-ranks the nodes whose neighbour invariants 
+	 * changed, and only the cells holding them are split. 
+	 * 
+	 * Node keys use the labels of the cells they depend on in place of ranks,
+	 * which gives the same order; the vertex invariants and the final node 
+	 * invariants are ranks, so they are the same as the sorting method gives.
+	 */
+	private void updateVertexInvariantsByPartition() {
+	    boolean rebuild = ensurePartitions();
+	    int layerCount = this.layers.size();
 	    
-	    // finally, copy the node invariants into the nodes, for easy sorting
-	    for (int i = 0; i < this.nodes.size(); i++) {
-	        this.nodes.get(i).invariant = invariants.getNodeInvariant(i);
+	    // the vertices whose colors have changed since the last refinement
+	    coloredCount = 0;
+	    for (int i = 0; i < itemVertices.length; i++) {
+	        int color = invariants.getColor(itemVertices[i]);
+	        if (color != refinedColors[i]) {
+	            refinedColors[i] = color;
+	            coloredItems[coloredCount++] = i;
+	        }
+	    }
+	    
+	    int[] oldInvariants = previousVertexInvariants;
+	    boolean invariantSame = true;
+	    boolean firstPass = true;
+	    while (invariantSame) {
+	        System.arraycopy(invariants.getVertexInvariants(), 0, 
+	                oldInvariants, 0, vertexCount);
+	        
+	        // up : a node depends on its vertex after the last sweep down, 
+	        // and on its children 
+	        markNodes(rebuild, firstPass, downVertexPartition);
+	        for (int i = layerCount - 1; i >= 0; i--) {
+	            refineLayer(upPartitions, i, Direction.UP);
+	        }
+	        refineVertices(upVertexPartition, upPartitions, rebuild);
+	        
+	        // down : a node depends on its vertex after the sweep up, and on
+	        // its parents
+	        markNodes(rebuild, firstPass, upVertexPartition);
+	        for (int i = 0; i < layerCount; i++) {
+	            refineLayer(downPartitions, i, Direction.DOWN);
+	        }
+	        refineVertices(downVertexPartition, downPartitions, rebuild);
+	        
+	        ensureKeys(itemVertices.length, 0);
+	        downVertexPartition.getRanks(ranks);
+	        for (int i = 0; i < itemVertices.length; i++) {
+	            invariants.setVertexInvariant(itemVertices[i], ranks[i]);
+	        }
+	        rebuild = false;
+	        firstPass = false;
+	        
+	        invariantSame = 
+	            checkInvariantChange(
+	                    oldInvariants, invariants.getVertexInvariants());
+	    }
+	    
+	    for (int i = 0; i < layerCount; i++) {
+	        int[] nodeIndices = layerNodes[i];
+	        ensureKeys(nodeIndices.length, 0);
+	        downPartitions[i].getRanks(ranks);
+	        for (int j = 0; j < nodeIndices.length; j++) {
+	            invariants.setNodeInvariant(nodeIndices[j], ranks[j]);
+	        }
+	    }
+	}
+	
+	/**
+	 * Start the worklist for a sweep with the nodes of the vertices that 
+	 * changed color, on the first pass, and of the splitters of the vertex
+	 * partition the sweep depends on - or with every node, on a rebuild.
+	 */
+	private void markNodes(
+	        boolean all, boolean firstPass, OrderedPartition vertexPartition) {
+	    mark++;
+	    if (all) {
+	        for (int i = 0; i < layerNodes.length; i++) {
+	            int[] nodeIndices = layerNodes[i];
+	            for (int j = 0; j < nodeIndices.length; j++) {
+	                nodeMarks[nodeIndices[j]] = mark;
+	                dirtyNodes[i][j] = j;
+	            }
+	            dirtyCounts[i] = nodeIndices.length;
+	        }
+	        return;
+	    }
+	    if (firstPass) {
+	        for (int i = 0; i < coloredCount; i++) {
+	            markItemNodes(coloredItems[i]);
+	        }
+	    }
+	    for (int i = 0; i < vertexPartition.getSplitterCount(); i++) {
+	        markItemNodes(vertexPartition.getSplitter(i));
+	    }
+	}
+	
+	private void markItemNodes(int item) {
+	    for (int nodeIndex : itemNodes[item]) {
+	        markNode(nodes.get(nodeIndex));
+	    }
+	}
+	
+	private void markNode(DAG.Node node) {
+	    if (nodeMarks[node.index] == mark) return;
+	    nodeMarks[node.index] = mark;
+	    dirtyNodes[node.layer][dirtyCounts[node.layer]++] = 
+	        layerPositions[node.index];
+	}
+	
+	/**
+	 * Make the keys for the nodes on the worklist of a layer, refine the 
+	 * partition of the layer, and put the relatives that depend on its 
+	 * splitters on the worklist.
+	 */
+	private void refineLayer(
+	        OrderedPartition[] partitions, int layer, Direction direction) {
+	    OrderedPartition partition = partitions[layer];
+	    int[] nodeIndices = layerNodes[layer];
+	    int[] dirty = dirtyNodes[layer];
+	    for (int i = 0; i < dirtyCounts[layer]; i++) {
+	        makeNodeKey(nodes.get(nodeIndices[dirty[i]]), direction);
+	        partition.setKey(dirty[i], keyBuffer);
+	    }
+	    dirtyCounts[layer] = 0;
+	    partition.refine(refiner);
+	    
+	    for (int i = 0; i < partition.getSplitterCount(); i++) {
+	        DAG.Node node = nodes.get(nodeIndices[partition.getSplitter(i)]);
+	        List<DAG.Node> dependents = (direction == Direction.UP) ?
+	                node.parents : node.children;
+	        for (DAG.Node dependent : dependents) {
+	            markNode(dependent);
+	        }
+	    }
+	}
+	
+	/**
+	 * Fill the key buffer with the key for a node : its color and vertex 
+	 * invariant, then the sorted labels of its relatives, then the sorted 
+	 * colors of the edges to them. This is the same order as the list made 
+	 * by the sorting method, where the edge colors are offset to come after
+	 * every node invariant.
+	 */
+	private void makeNodeKey(DAG.Node node, Direction direction) {
+	    keyCount++;
+	    int x = node.vertexIndex;
+	    keyBuffer[0] = this.invariants.getColor(x);
+	    
+	    List<DAG.Node> relatives;
+	    OrderedPartition[] partitions;
+	    int[] edgeColors;
+	    if (direction == Direction.UP) {
+	        // the initial invariants are used until the first sweep down
+	        if (downVertexPartition.getCellCount() == 0) {
+	            keyBuffer[1] = this.invariants.getVertexInvariant(x);
+	        } else {
+	            keyBuffer[1] = downVertexPartition.getLabel(vertexItems[x]);
+	        }
+	        relatives = node.children;
+	        partitions = upPartitions;
+	        edgeColors = childEdgeColors[node.index];
+	    } else {
+	        keyBuffer[1] = upVertexPartition.getLabel(vertexItems[x]);
+	        relatives = node.parents;
+	        partitions = downPartitions;
+	        edgeColors = parentEdgeColors[node.index];
+	    }
+	    int count = relatives.size();
+	    for (int i = 0; i < count; i++) {
+	        DAG.Node relative = relatives.get(i);
+	        keyBuffer[2 + i] = partitions[relative.layer].getLabel(
+	                layerPositions[relative.index]);
+	    }
+	    Arrays.sort(keyBuffer, 2, 2 + count);
+	    System.arraycopy(edgeColors, 0, keyBuffer, 2 + count, count);
+	}
+	
+	/**
+	 * Make the keys for the vertices with a node among the splitters of the
+	 * layer partitions - or for every vertex, on a rebuild - and refine the
+	 * vertex partition.
+	 */
+	private void refineVertices(OrderedPartition partition, 
+	        OrderedPartition[] layerPartitions, boolean all) {
+	    if (all) {
+	        for (int i = 0; i < itemVertices.length; i++) {
+	            makeVertexKey(i, layerPartitions);
+	            partition.setKey(i, keyBuffer);
+	        }
+	    } else {
+	        for (int i = 0; i < layerPartitions.length; i++) {
+	            OrderedPartition layerPartition = layerPartitions[i];
+	            for (int j = 0; j < layerPartition.getSplitterCount(); j++) {
+	                int nodeIndex = layerNodes[i][layerPartition.getSplitter(j)];
+	                int item = vertexItems[nodes.get(nodeIndex).vertexIndex];
+	                if (itemMarks[item] == mark) continue;
+	                itemMarks[item] = mark;
+	                makeVertexKey(item, layerPartitions);
+	                partition.setKey(item, keyBuffer);
+	            }
+	        }
+	    }
+	    partition.refine(refiner);
+	}
+	
+	/**
+	 * Fill the key buffer with the key for a vertex : the label of its node
+	 * in each layer, or zero for layers that it does not appear in.
+	 */
+	private void makeVertexKey(int item, OrderedPartition[] layerPartitions) {
+	    keyCount++;
+	    Arrays.fill(keyBuffer, 0, this.layers.size(), 0);
+	    for (int nodeIndex : itemNodes[item]) {
+	        int layer = nodes.get(nodeIndex).layer;
+	        keyBuffer[layer] = 
+	            layerPartitions[layer].getLabel(layerPositions[nodeIndex]);
+	    }
+	}
+	
+	/**
+	 * Make the partitions for the PARTITION method, if they have not been made
+	 * since the DAG, its labels or its invariants were last changed from 
+	 * outside a refinement.
+	 * 
+	 * @return true if the partitions were made now, and are still empty
+	 */
+	private boolean ensurePartitions() {
+	    if (upPartitions != null) return false;
+	    int layerCount = this.layers.size();
+	    int nodeCount = this.nodes.size();
+	    int maxKeyLength = layerCount;
+	    
+	    layerNodes = new int[layerCount][];
+	    layerPositions = new int[nodeCount];
+	    dirtyNodes = new int[layerCount][];
+	    dirtyCounts = new int[layerCount];
+	    nodeMarks = new int[nodeCount];
+	    upPartitions = new OrderedPartition[layerCount];
+	    downPartitions = new OrderedPartition[layerCount];
+	    for (int i = 0; i < layerCount; i++) {
+	        List<DAG.Node> layer = this.layers.get(i);
+	        layerNodes[i] = new int[layer.size()];
+	        dirtyNodes[i] = new int[layer.size()];
+	        int[] upKeyLengths = new int[layer.size()];
+	        int[] downKeyLengths = new int[layer.size()];
+	        for (int j = 0; j < layer.size(); j++) {
+	            DAG.Node node = layer.get(j);
+	            layerNodes[i][j] = node.index;
+	            layerPositions[node.index] = j;
+	            upKeyLengths[j] = 2 + 2 * node.children.size();
+	            downKeyLengths[j] = 2 + 2 * node.parents.size();
+	            maxKeyLength = Math.max(maxKeyLength, 
+	                    Math.max(upKeyLengths[j], downKeyLengths[j]));
+	        }
+	        upPartitions[i] = new OrderedPartition(upKeyLengths);
+	        downPartitions[i] = new OrderedPartition(downKeyLengths);
+	    }
+	    keyBuffer = new int[maxKeyLength];
+	    
+	    childEdgeColors = new int[nodeCount][];
+	    parentEdgeColors = new int[nodeCount][];
+	    for (DAG.Node node : this.nodes) {
+	        int[] colors = new int[node.children.size()];
+	        for (int i = 0; i < colors.length; i++) {
+	            colors[i] = 
+	                node.children.get(i).edgeColors.get(node.vertexIndex);
+	        }
+	        Arrays.sort(colors);
+	        childEdgeColors[node.index] = colors;
+	        
+	        colors = new int[node.parents.size()];
+	        for (int i = 0; i < colors.length; i++) {
+	            colors[i] = node.edgeColors.get(node.parents.get(i).vertexIndex);
+	        }
+	        Arrays.sort(colors);
+	        parentEdgeColors[node.index] = colors;
+	    }
+	    
+	    // only the vertices with nodes are ranked, as in the sorting method
+	    int[] nodeCounts = new int[vertexCount];
+	    for (DAG.Node node : this.nodes) {
+	        nodeCounts[node.vertexIndex]++;
+	    }
+	    int itemCount = 0;
+	    vertexItems = new int[vertexCount];
+	    for (int i = 0; i < vertexCount; i++) {
+	        vertexItems[i] = (nodeCounts[i] == 0) ? -1 : itemCount++;
+	    }
+	    itemVertices = new int[itemCount];
+	    itemNodes = new int[itemCount][];
+	    for (int i = 0; i < vertexCount; i++) {
+	        if (vertexItems[i] == -1) continue;
+	        itemVertices[vertexItems[i]] = i;
+	        itemNodes[vertexItems[i]] = new int[nodeCounts[i]];
+	        nodeCounts[i] = 0;
+	    }
+	    for (DAG.Node node : this.nodes) {
+	        int item = vertexItems[node.vertexIndex];
+	        itemNodes[item][nodeCounts[node.vertexIndex]++] = node.index;
+	    }
+	    itemMarks = new int[itemCount];
+	    refinedColors = new int[itemCount];
+	    coloredItems = new int[itemCount];
+	    
+	    int[] vertexKeyLengths = new int[itemCount];
+	    Arrays.fill(vertexKeyLengths, layerCount);
+	    upVertexPartition = new OrderedPartition(vertexKeyLengths);
+	    downVertexPartition = new OrderedPartition(vertexKeyLengths);
+	    return true;
+	}
+	
+	/**
+	 * @return the number of node and vertex keys made so far by refinements
+	 * with the PARTITION method, which is how much of them was redone
+	 */
+	int getKeyCount() {
+	    return keyCount;
+	}
+	
+	/**
+	 * Drop the partitions, after a change to the DAG, its labels or its 
+	 * invariants.
+	 */
+	private void clearPartitions() {
+	    upPartitions = null;
+	}
+	
+	/**
+	 * A copy of the partitions, saved with the invariants.
+	 */
+	private class SavedPartitions {
+	    
+	    /**
+	     * The partitions that were copied, or null if there were none
+	     */
+	    private OrderedPartition[] source;
+	    
+	    /**
+	     * The partitions that the copies were made for
+	     */
+	    private OrderedPartition[] copiedFor;
+	    
+	    private OrderedPartition[] up;
+	    
+	    private OrderedPartition[] down;
+	    
+	    private OrderedPartition upVertex;
+	    
+	    private OrderedPartition downVertex;
+	    
+	    private int[] colors;
+	    
+	    private void save() {
+	        source = upPartitions;
+	        if (source == null) return;
+	        // the copies are reused, unless the partitions have been made again
+	        if (copiedFor != upPartitions) {
+	            up = new OrderedPartition[upPartitions.length];
+	            down = new OrderedPartition[downPartitions.length];
+	            for (int i = 0; i < up.length; i++) {
+	                up[i] = upPartitions[i].makeEmptyCopy();
+	                down[i] = downPartitions[i].makeEmptyCopy();
+	            }
+	            upVertex = upVertexPartition.makeEmptyCopy();
+	            downVertex = downVertexPartition.makeEmptyCopy();
+	            colors = new int[refinedColors.length];
+	            copiedFor = upPartitions;
+	        }
+	        for (int i = 0; i < up.length; i++) {
+	            upPartitions[i].copyTo(up[i]);
+	            downPartitions[i].copyTo(down[i]);
+	        }
+	        upVertexPartition.copyTo(upVertex);
+	        downVertexPartition.copyTo(downVertex);
+	        System.arraycopy(refinedColors, 0, colors, 0, colors.length);
+	    }
+	    
+	    private void restore() {
+	        if (source == null || source != upPartitions) {
+	            clearPartitions();
+	            return;
+	        }
+	        for (int i = 0; i < up.length; i++) {
+	            up[i].copyTo(upPartitions[i]);
+	            down[i].copyTo(downPartitions[i]);
+	        }
+	        upVertex.copyTo(upVertexPartition);
+	        downVertex.copyTo(downVertexPartition);
+	        System.arraycopy(colors, 0, refinedColors, 0, colors.length);
 	    }
 	}
 	
@@ -619,24 +1315,25 @@ public class DAG implements Iterable<List<DAG.Node>> {
 	}
 	
 	public void updateLayer(List<DAG.Node> layer, DAG.Direction direction) {
-	    List<InvariantList> nodeInvariantList = 
-            new ArrayList<InvariantList>();
+	    clearPartitions();
+	    if (rankingMethod == RankingMethod.PARTITION) {
+	        updateLayerByPartition(layer, direction);
+	        return;
+	    }
+	    InvariantList[] nodeInvariantList = getInvariantListPool(layer.size());
         for (int i = 0; i < layer.size(); i++) {
             DAG.Node layerNode = layer.get(i);
             int x = layerNode.vertexIndex;
-            InvariantList nodeInvariant = 
-                new InvariantList(nodes.indexOf(layerNode));
+            InvariantList nodeInvariant = nodeInvariantList[i];
+            nodeInvariant.reset(layerNode.index);
             nodeInvariant.add(this.invariants.getColor(x));
             nodeInvariant.add(this.invariants.getVertexInvariant(x));
             
-            List<Integer> relativeInvariants = new ArrayList<Integer>();
-
             // If we go up we should check the children.
             List<DAG.Node> relatives = (direction == Direction.UP) ? 
                     layerNode.children : layerNode.parents;
             for (Node relative : relatives) {
-                int j = this.nodes.indexOf(relative);
-                int inv = this.invariants.getNodeInvariant(j);
+                int inv = this.invariants.getNodeInvariant(relative.index);
 //                System.out.println(layerNode.edgeColors + " getting " + relative.vertexIndex);
                 int edgeColor;
                 if (direction == Direction.UP) {
@@ -647,23 +1344,22 @@ public class DAG implements Iterable<List<DAG.Node>> {
 //            	relativeInvariants.add(inv * edgeColor);
 //                relativeInvariants.add(inv * (edgeColor + 1));
                 
-                relativeInvariants.add(inv);
-                relativeInvariants.add(vertexCount + 1 + edgeColor);
+                nodeInvariant.add(inv);
+                nodeInvariant.add(vertexCount + 1 + edgeColor);
             }
-            Collections.sort(relativeInvariants);
-            nodeInvariant.addAll(relativeInvariants);
-            nodeInvariantList.add(nodeInvariant);
+            // the relative invariants are sorted amongst themselves
+            nodeInvariant.sort(2, nodeInvariant.size());
         }
         
-        Collections.sort(nodeInvariantList);
+        Arrays.sort(nodeInvariantList, 0, layer.size());
 //        System.out.println(nodeInvariantList + " for layer " + layer + " " + direction);
         
         int order = 1;
-        int first = nodeInvariantList.get(0).originalIndex;
+        int first = nodeInvariantList[0].originalIndex;
         this.invariants.setNodeInvariant(first, order);
-        for (int i = 1; i < nodeInvariantList.size(); i++) {
-            InvariantList a = nodeInvariantList.get(i - 1);
-            InvariantList b = nodeInvariantList.get(i);
+        for (int i = 1; i < layer.size(); i++) {
+            InvariantList a = nodeInvariantList[i - 1];
+            InvariantList b = nodeInvariantList[i];
             if (!a.equals(b)) {
                 order++;
             }
@@ -671,6 +1367,66 @@ public class DAG implements Iterable<List<DAG.Node>> {
         }
 	}
 	
+	private void updateLayerByPartition(
+	        List<DAG.Node> layer, DAG.Direction direction) {
+	    int keySize = 0;
+	    for (DAG.Node layerNode : layer) {
+	        List<DAG.Node> relatives = (direction == Direction.UP) ? 
+	                layerNode.children : layerNode.parents;
+	        keySize += 2 + 2 * relatives.size();
+	    }
+	    ensureKeys(layer.size(), keySize);
+	    
+	    // the same key as the InvariantList made by the sorting method
+	    int position = 0;
+	    for (int i = 0; i < layer.size(); i++) {
+	        DAG.Node layerNode = layer.get(i);
+	        int x = layerNode.vertexIndex;
+	        keyStart[i] = position;
+	        keys[position++] = this.invariants.getColor(x);
+	        keys[position++] = this.invariants.getVertexInvariant(x);
+	        
+	        List<DAG.Node> relatives = (direction == Direction.UP) ? 
+	                layerNode.children : layerNode.parents;
+	        for (Node relative : relatives) {
+	            int edgeColor;
+	            if (direction == Direction.UP) {
+	                edgeColor = relative.edgeColors.get(layerNode.vertexIndex);
+	            } else {
+	                edgeColor = layerNode.edgeColors.get(relative.vertexIndex);
+	            }
+	            keys[position++] = 
+	                this.invariants.getNodeInvariant(relative.index);
+	            keys[position++] = vertexCount + 1 + edgeColor;
+	        }
+	        keyLength[i] = position - keyStart[i];
+	        Arrays.sort(keys, keyStart[i] + 2, position);
+	    }
+	    
+	    refiner.rank(layer.size(), keys, keyStart, keyLength, ranks);
+	    for (int i = 0; i < layer.size(); i++) {
+	        this.invariants.setNodeInvariant(layer.get(i).index, ranks[i]);
+	    }
+	}
+	
+	/**
+	 * Get scratch invariant lists for ranking a layer, reusing the ones made
+	 * for earlier layers and passes where possible.
+	 * 
+	 * @param size the number of lists needed
+	 * @return an array with at least size lists
+	 */
+	private InvariantList[] getInvariantListPool(int size) {
+	    if (invariantListPool.length < size) {
+	        int oldSize = invariantListPool.length;
+	        invariantListPool = Arrays.copyOf(invariantListPool, size);
+	        for (int i = oldSize; i < size; i++) {
+	            invariantListPool[i] = new InvariantList(-1);
+	        }
+	    }
+	    return invariantListPool;
+	}
+	
 	public String toString() {
 		StringBuffer buffer = new StringBuffer();
 		for (List<Node> layer : this) {
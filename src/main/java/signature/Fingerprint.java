@@ -0,0 +1,87 @@
+package signature;
+
+/**
+ * A 128-bit hash of a signature string, for telling graphs or vertices apart
+ * without storing their full signatures. Equal signature strings always have
+ * equal fingerprints, while different strings have different fingerprints 
+ * except with a vanishingly small probability.
+ */
+public final class Fingerprint implements Comparable<Fingerprint> {
+
+    private final long high;
+
+    private final long low;
+
+    public Fingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * Make the fingerprint of a string.
+     *
+     * @param signatureString the string to hash
+     * @return the fingerprint of the string
+     */
+    public static Fingerprint of(CharSequence signatureString) {
+        return new FingerprintHasher().update(signatureString).finish();
+    }
+
+    /**
+     * @return the upper 64 bits
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * @return the lower 64 bits, which can be used alone as a 64-bit hash
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Add two fingerprints, as 128-bit numbers. As addition does not depend
+     * on the order, summing the fingerprints of the members of a multiset 
+     * gives a fingerprint for the multiset.
+     *
+     * @param other the fingerprint to add to this one
+     * @return the sum of the fingerprints
+     */
+    public Fingerprint add(Fingerprint other) {
+        long sumLow = low + other.low;
+        long carry = (Long.compareUnsigned(sumLow, low) < 0) ? 1 : 0;
+        return new Fingerprint(high + other.high + carry, sumLow);
+    }
+
+    public int compareTo(Fingerprint other) {
+        int cmp = Long.compareUnsigned(high, other.high);
+        if (cmp == 0) {
+            return Long.compareUnsigned(low, other.low);
+        } else {
+            return cmp;
+        }
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof Fingerprint) {
+            Fingerprint other = (Fingerprint) o;
+            return high == other.high && low == other.low;
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return (int) low;
+    }
+
+    /**
+     * @return the fingerprint as 32 hexadecimal digits
+     */
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+}
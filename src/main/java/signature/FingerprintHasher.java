@@ -0,0 +1,128 @@
+package signature;
+
+/**
+ * Builds a {@link Fingerprint} from characters as they are added, so that a 
+ * signature can be hashed without first being made into a string. The hash 
+ * is MurmurHash3 (the 128-bit, x64 variant) of the UTF-16 code units of the
+ * characters.
+ */
+public class FingerprintHasher {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+
+    private long h2;
+
+    /**
+     * The characters of the current block, until it is full
+     */
+    private long k1;
+
+    private long k2;
+
+    private int pending;
+
+    /**
+     * The number of characters added
+     */
+    private long length;
+
+    public FingerprintHasher() {
+        this(0);
+    }
+
+    /**
+     * @param seed a seed, to get a different family of hashes
+     */
+    public FingerprintHasher(long seed) {
+        this.h1 = seed;
+        this.h2 = seed;
+    }
+
+    public FingerprintHasher update(char c) {
+        if (pending < 4) {
+            k1 |= ((long) c) << (16 * pending);
+        } else {
+            k2 |= ((long) c) << (16 * (pending - 4));
+        }
+        pending++;
+        length++;
+        if (pending == 8) {
+            mixBlock();
+        }
+        return this;
+    }
+
+    public FingerprintHasher update(CharSequence chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            update(chars.charAt(i));
+        }
+        return this;
+    }
+
+    public FingerprintHasher update(char[] chars, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            update(chars[i]);
+        }
+        return this;
+    }
+
+    public FingerprintHasher update(long value) {
+        for (int shift = 0; shift < 64; shift += 16) {
+            update((char) (value >>> shift));
+        }
+        return this;
+    }
+
+    /**
+     * Make the fingerprint of the characters added so far. More characters 
+     * can still be added afterwards.
+     *
+     * @return the fingerprint
+     */
+    public Fingerprint finish() {
+        long a = h1;
+        long b = h2;
+        if (pending > 4) {
+            b ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        }
+        if (pending > 0) {
+            a ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        }
+        long byteCount = length * 2;
+        a ^= byteCount;
+        b ^= byteCount;
+        a += b;
+        b += a;
+        a = mix(a);
+        b = mix(b);
+        a += b;
+        b += a;
+        return new Fingerprint(b, a);
+    }
+
+    private void mixBlock() {
+        h1 ^= Long.rotateLeft(k1 * C1, 31) * C2;
+        h1 = Long.rotateLeft(h1, 27) + h2;
+        h1 = h1 * 5 + 0x52dce729;
+        h2 ^= Long.rotateLeft(k2 * C2, 33) * C1;
+        h2 = Long.rotateLeft(h2, 31) + h1;
+        h2 = h2 * 5 + 0x38495ab5;
+        k1 = 0;
+        k2 = 0;
+        pending = 0;
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+}
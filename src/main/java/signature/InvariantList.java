@@ -1,72 +1,117 @@
 package signature;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.Arrays;
 
+/**
+ * A growable vector of int invariants for one node, together with the index
+ * of the node it belongs to. Instances can be reset and reused, so that the
+ * DAG does not have to allocate new lists on every refinement pass.
+ */
 public class InvariantList implements Comparable<InvariantList>{
-    
-    public List<Integer> invariants;
-    
+
+    private int[] invariants;
+
+    private int size;
+
     public int originalIndex;
-    
+
     public InvariantList(int originalIndex) {
-        this.invariants = new ArrayList<Integer>();
+        this.invariants = new int[8];
+        this.size = 0;
         this.originalIndex = originalIndex;
     }
-    
-    public boolean equals(List<Integer> other) {
+
+    /**
+     * Empty the list so that it can be refilled for another node, keeping the
+     * allocated storage.
+     *
+     * @param originalIndex the index of the node the list is now for
+     */
+    public void reset(int originalIndex) {
+        this.size = 0;
+        this.originalIndex = originalIndex;
+    }
+
+    public void add(int i) {
+        if (size == invariants.length) {
+            invariants = Arrays.copyOf(invariants, size * 2);
+        }
+        this.invariants[size] = i;
+        size++;
+    }
+
+    public void addAll(int[] other) {
+        for (int i : other) {
+            add(i);
+        }
+    }
+
+    /**
+     * Sort the invariants in the range [from, to) into ascending order.
+     *
+     * @param from the first position to sort, inclusive
+     * @param to the last position to sort, exclusive
+     */
+    public void sort(int from, int to) {
+        Arrays.sort(invariants, from, to);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int i) {
+        return invariants[i];
+    }
+
+    public boolean equals(InvariantList other) {
     	// Check the size first. If it differs return false.
-    	if ( !(this.invariants.size() == other.size()) ){
-    		return false;
-    	}
-        for (int i = 0; i < this.invariants.size(); i++) {
-            if (this.invariants.get(i) == other.get(i)) {
-                continue;
-            } else {
+        if (this.size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < this.size; i++) {
+            if (this.invariants[i] != other.invariants[i]) {
                 return false;
             }
         }
         return true;
     }
-    
-    public void add(int i) {
-        this.invariants.add(i);
-    }
-    
-    public void addAll(Collection<Integer> other) {
-        this.invariants.addAll(other);
-    }
-    
+
     public boolean equals(Object o) {
         if (o instanceof InvariantList) {
-            InvariantList other = (InvariantList) o;
-            return this.equals(other.invariants);
+            return this.equals((InvariantList) o);
         }
         return false;
     }
 
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + invariants[i];
+        }
+        return hash;
+    }
+
     public int compareTo(InvariantList o) {
-        int lA = this.invariants.size();
-        int lB = o.invariants.size();
-        if (lA < lB) {
+        if (this.size < o.size) {
             return -1;
-        } else if (lA > lB) {
+        } else if (this.size > o.size) {
             return 1;
         } else {
-            for (int i = 0; i < this.invariants.size(); i++) {
-                if (this.invariants.get(i) < o.invariants.get(i)) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.invariants[i] < o.invariants[i]) {
                     return -1;
-                } else if (this.invariants.get(i) > o.invariants.get(i)) {
+                } else if (this.invariants[i] > o.invariants[i]) {
                     return 1;
                 }
             }
             return 0;
         }
     }
-    
+
     public String toString() {
-        return originalIndex + " " + invariants;
+        return originalIndex + " "
+             + Arrays.toString(Arrays.copyOf(invariants, size));
     }
 
 }
@@ -10,7 +10,7 @@ public class Invariants implements Cloneable {
     public int[] colors;
     
     /**
-     * The invariants of the nodes of the DAG
+     * The invariants of the nodes of the DAG, indexed by {@link DAG.Node#index}
      */
     public int[] nodeInvariants;
     
@@ -58,6 +58,26 @@ public class Invariants implements Cloneable {
         nodeInvariants[nodeIndex] = value;
     }
     
+    /**
+     * Copy these invariants into another set, reusing its arrays if they are
+     * the same size.
+     * 
+     * @param other the invariants to copy into
+     */
+    public void copyTo(Invariants other) {
+        other.colors = copy(colors, other.colors);
+        other.nodeInvariants = copy(nodeInvariants, other.nodeInvariants);
+        other.vertexInvariants = copy(vertexInvariants, other.vertexInvariants);
+    }
+    
+    private static int[] copy(int[] from, int[] to) {
+        if (to.length != from.length) {
+            return (int[]) from.clone();
+        }
+        System.arraycopy(from, 0, to, 0, from.length);
+        return to;
+    }
+    
     public Object clone() {
         Invariants copy = new Invariants(colors.length, vertexInvariants.length);
         copy.colors = (int[]) colors.clone();
@@ -0,0 +1,423 @@
+package signature;
+
+import java.util.Arrays;
+
+/**
+ * An ordered partition of items by their keys, that is kept up to date as the
+ * keys change instead of being made again from scratch. Items with equal keys
+ * are in the same cell, and the cells are in the order of their keys - first
+ * by length and then lexicographically, as for {@link PartitionRefiner}.
+ *
+ * Each cell has a label, and the labels increase in the order of the cells,
+ * so a label can stand in for the rank of an item in the keys of another
+ * partition. Unlike a rank, the label of a cell does not change when other
+ * cells are made or removed : a new cell is labelled between its neighbours,
+ * and only when there is no room left are all the cells labelled again. A
+ * cell whose items all change keys but stay in the same order keeps its
+ * label.
+ *
+ * Changing the key of an item with {@link #setKey(int, int[])} puts it on a
+ * queue. Then {@link #refine(PartitionRefiner)} takes each queued item out of
+ * its cell and puts it into the cell for its new key, splitting off a new cell
+ * if there is none, so only the cells holding changed items are touched. The
+ * items that end up with a different label are the splitters : the keys that
+ * use their labels in other partitions have to be changed in turn.
+ */
+public class OrderedPartition {
+
+    /**
+     * The labels of the cells are always less than this
+     */
+    private static final int LABEL_LIMIT = Integer.MAX_VALUE;
+
+    private final int itemCount;
+
+    private final int[] keys;
+
+    private final int[] keyStart;
+
+    private final int[] keyLength;
+
+    /**
+     * The cell of each item, or -1 for an item not yet placed
+     */
+    private final int[] cellOf;
+
+    /**
+     * The items before and after each item in its cell, or -1
+     */
+    private final int[] previous;
+
+    private final int[] next;
+
+    /**
+     * The label of each queued item before the refinement
+     */
+    private final int[] oldLabels;
+
+    /**
+     * The first item, size and label of each cell
+     */
+    private final int[] first;
+
+    private final int[] size;
+
+    private final int[] labels;
+
+    /**
+     * The cells in use, in order
+     */
+    private final int[] cells;
+
+    private int cellCount;
+
+    /**
+     * A stack of the cells not in use
+     */
+    private final int[] freeCells;
+
+    private int freeCount;
+
+    /**
+     * The items whose keys have changed since the last refinement
+     */
+    private final int[] queue;
+
+    private final boolean[] queued;
+
+    private int queueLength;
+
+    /**
+     * The items whose labels changed in the last refinement
+     */
+    private final int[] splitters;
+
+    private int splitterCount;
+
+    /**
+     * Scratch for the ranks of the cells or items
+     */
+    private final int[] ranks;
+
+    /**
+     * Make an empty partition, for items with keys of the given lengths. The
+     * first refinement has to follow a call to {@link #setKey} for every item.
+     *
+     * @param keyLengths the length of the key of each item
+     */
+    public OrderedPartition(int[] keyLengths) {
+        this.itemCount = keyLengths.length;
+        this.keyLength = keyLengths.clone();
+        this.keyStart = new int[itemCount];
+        int total = 0;
+        for (int i = 0; i < itemCount; i++) {
+            keyStart[i] = total;
+            total += keyLength[i];
+        }
+        this.keys = new int[total];
+        this.cellOf = new int[itemCount];
+        this.previous = new int[itemCount];
+        this.next = new int[itemCount];
+        this.oldLabels = new int[itemCount];
+        this.first = new int[itemCount];
+        this.size = new int[itemCount];
+        this.labels = new int[itemCount];
+        this.cells = new int[itemCount];
+        this.freeCells = new int[itemCount];
+        this.queue = new int[itemCount];
+        this.queued = new boolean[itemCount];
+        this.splitters = new int[itemCount];
+        this.ranks = new int[itemCount];
+        Arrays.fill(cellOf, -1);
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Set the key of an item, queueing it for the next refinement if the key
+     * is different.
+     *
+     * @param item the item
+     * @param key an array starting with the key, of the length for this item
+     * @return true if the key was different
+     */
+    public boolean setKey(int item, int[] key) {
+        int start = keyStart[item];
+        int length = keyLength[item];
+        if (cellOf[item] != -1) {
+            int i = 0;
+            while (i < length && keys[start + i] == key[i]) {
+                i++;
+            }
+            if (i == length) return false;
+        }
+        System.arraycopy(key, 0, keys, start, length);
+        if (!queued[item]) {
+            queued[item] = true;
+            queue[queueLength++] = item;
+        }
+        return true;
+    }
+
+    /**
+     * Move each queued item to the cell for its new key, and record the items
+     * whose labels changed as the splitters.
+     *
+     * @param refiner used to rank all the items for the first refinement
+     */
+    public void refine(PartitionRefiner refiner) {
+        splitterCount = 0;
+        if (queueLength == 0) return;
+        if (cellCount == 0) {
+            build(refiner);
+        } else {
+            // empty the queued items out first, so that every cell is left
+            // holding only items whose keys are up to date
+            for (int i = 0; i < queueLength; i++) {
+                int item = queue[i];
+                oldLabels[item] = labels[cellOf[item]];
+                unlink(item);
+            }
+            boolean relabelled = false;
+            for (int i = 0; i < queueLength; i++) {
+                int item = queue[i];
+                int position = search(item);
+                if (position >= 0) {
+                    link(item, cells[position]);
+                } else {
+                    relabelled |= 
+                        insertCell(item, -position - 1, oldLabels[item]);
+                }
+                if (labels[cellOf[item]] != oldLabels[item]) {
+                    splitters[splitterCount++] = item;
+                }
+            }
+            if (relabelled) {
+                for (int i = 0; i < itemCount; i++) {
+                    splitters[i] = i;
+                }
+                splitterCount = itemCount;
+            }
+        }
+        for (int i = 0; i < queueLength; i++) {
+            queued[queue[i]] = false;
+        }
+        queueLength = 0;
+    }
+
+    /**
+     * @return the number of items whose labels changed in the last refinement
+     */
+    public int getSplitterCount() {
+        return splitterCount;
+    }
+
+    public int getSplitter(int index) {
+        return splitters[index];
+    }
+
+    public int getLabel(int item) {
+        return labels[cellOf[item]];
+    }
+
+    /**
+     * Fill an array with the rank of each item : the position of its cell,
+     * counting from 1.
+     *
+     * @param itemRanks the array to fill, indexed by item
+     * @return the number of cells
+     */
+    public int getRanks(int[] itemRanks) {
+        for (int i = 0; i < cellCount; i++) {
+            ranks[cells[i]] = i + 1;
+        }
+        for (int i = 0; i < itemCount; i++) {
+            itemRanks[i] = ranks[cellOf[i]];
+        }
+        return cellCount;
+    }
+
+    /**
+     * Copy this partition, between refinements, to another made for items
+     * with the same key lengths.
+     *
+     * @param other the partition to copy to
+     */
+    public void copyTo(OrderedPartition other) {
+        System.arraycopy(keys, 0, other.keys, 0, keys.length);
+        System.arraycopy(cellOf, 0, other.cellOf, 0, itemCount);
+        System.arraycopy(previous, 0, other.previous, 0, itemCount);
+        System.arraycopy(next, 0, other.next, 0, itemCount);
+        System.arraycopy(first, 0, other.first, 0, itemCount);
+        System.arraycopy(size, 0, other.size, 0, itemCount);
+        System.arraycopy(labels, 0, other.labels, 0, itemCount);
+        System.arraycopy(cells, 0, other.cells, 0, cellCount);
+        System.arraycopy(freeCells, 0, other.freeCells, 0, freeCount);
+        System.arraycopy(splitters, 0, other.splitters, 0, splitterCount);
+        other.cellCount = cellCount;
+        other.freeCount = freeCount;
+        other.splitterCount = splitterCount;
+    }
+
+    /**
+     * @return a new partition, for items with the same key lengths as this
+     */
+    public OrderedPartition makeEmptyCopy() {
+        return new OrderedPartition(keyLength);
+    }
+
+    /**
+     * Put every item into a cell, with the labels spread evenly.
+     */
+    private void build(PartitionRefiner refiner) {
+        cellCount = refiner.rank(itemCount, keys, keyStart, keyLength, ranks);
+        for (int cell = 0; cell < cellCount; cell++) {
+            cells[cell] = cell;
+            first[cell] = -1;
+            size[cell] = 0;
+        }
+        relabel();
+        freeCount = 0;
+        for (int cell = itemCount - 1; cell >= cellCount; cell--) {
+            freeCells[freeCount++] = cell;
+        }
+        for (int i = 0; i < itemCount; i++) {
+            link(i, ranks[i] - 1);
+            splitters[i] = i;
+        }
+        splitterCount = itemCount;
+    }
+
+    /**
+     * Make a new cell for an item at a position in the order of cells. The
+     * new cell keeps the old label of the item if that fits between its
+     * neighbours - so a cell whose items all changed keys without changing
+     * order keeps its label, and its items are not splitters.
+     *
+     * @return true if all the cells had to be labelled again
+     */
+    private boolean insertCell(int item, int position, int oldLabel) {
+        int cell = freeCells[--freeCount];
+        first[cell] = -1;
+        size[cell] = 0;
+        System.arraycopy(
+                cells, position, cells, position + 1, cellCount - position);
+        cells[position] = cell;
+        cellCount++;
+        link(item, cell);
+
+        int low = (position == 0) ? 0 : labels[cells[position - 1]];
+        int high = (position == cellCount - 1) ?
+                LABEL_LIMIT : labels[cells[position + 1]];
+        if (low < oldLabel && oldLabel < high) {
+            // the old cell has been emptied, or its label would not fit
+            labels[cell] = oldLabel;
+        } else if (high - low < 2) {
+            relabel();
+            return true;
+        } else {
+            labels[cell] = low + (high - low) / 2;
+        }
+        return false;
+    }
+
+    private void relabel() {
+        int spacing = LABEL_LIMIT / (cellCount + 1);
+        for (int i = 0; i < cellCount; i++) {
+            labels[cells[i]] = (i + 1) * spacing;
+        }
+    }
+
+    private void link(int item, int cell) {
+        previous[item] = -1;
+        next[item] = first[cell];
+        if (first[cell] != -1) {
+            previous[first[cell]] = item;
+        }
+        first[cell] = item;
+        size[cell]++;
+        cellOf[item] = cell;
+    }
+
+    private void unlink(int item) {
+        int cell = cellOf[item];
+        if (previous[item] == -1) {
+            first[cell] = next[item];
+        } else {
+            next[previous[item]] = next[item];
+        }
+        if (next[item] != -1) {
+            previous[next[item]] = previous[item];
+        }
+        cellOf[item] = -1;
+        size[cell]--;
+        if (size[cell] == 0) {
+            int position = positionOf(labels[cell]);
+            System.arraycopy(cells, position + 1,
+                    cells, position, cellCount - position - 1);
+            cellCount--;
+            freeCells[freeCount++] = cell;
+        }
+    }
+
+    /**
+     * @return the position of the cell with this label
+     */
+    private int positionOf(int label) {
+        int low = 0;
+        int high = cellCount - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (labels[cells[middle]] < label) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the position of the cell with the same key as the item, or
+     * (-(insertion point) - 1) if there is none, as for a binary search
+     */
+    private int search(int item) {
+        int low = 0;
+        int high = cellCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(first[cells[middle]], item);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int compare(int a, int b) {
+        if (keyLength[a] != keyLength[b]) {
+            return keyLength[a] < keyLength[b] ? -1 : 1;
+        }
+        int startA = keyStart[a];
+        int startB = keyStart[b];
+        for (int i = 0; i < keyLength[a]; i++) {
+            int valueA = keys[startA + i];
+            int valueB = keys[startB + i];
+            if (valueA != valueB) {
+                return valueA < valueB ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,191 @@
+package signature;
+
+import java.util.Arrays;
+
+/**
+ * Ranks items by their invariant keys by refining an ordered partition, as an
+ * alternative to sorting lists of comparable invariant objects.
+ *
+ * Every item has a key, which is a run of ints in a shared array. Keys are
+ * ordered first by length and then lexicographically - the same order as
+ * {@link InvariantList} - and items with equal keys get the same rank, with
+ * ranks starting at 1 and increasing by one for each distinct key.
+ *
+ * The items start in a single cell, which is split by key length, and then
+ * each cell is split by the value at the next position of the key using a
+ * counting sort. Cells with a single item, or where every position has been
+ * used, are not split any further.
+ *
+ * Each call ranks its items from a single cell. To split only the cells
+ * whose keys have changed, {@link DAG} keeps an {@link OrderedPartition} for
+ * each layer between passes, which uses this class just for its first
+ * ranking.
+ */
+public class PartitionRefiner {
+
+    /**
+     * If the range of values in a cell is more than this many times the size
+     * of the cell, a comparison sort is used to split it instead of a
+     * counting sort
+     */
+    private static final int MAX_RANGE_FACTOR = 4;
+
+    /**
+     * The items, in the order of the partition
+     */
+    private int[] order = new int[0];
+
+    /**
+     * Scratch for the counting sort
+     */
+    private int[] scratch = new int[0];
+
+    private int[] counts = new int[0];
+
+    private long[] packed = new long[0];
+
+    /**
+     * A stack of cells still to be split, as (start, end, depth) triples
+     */
+    private int[] cellStack = new int[0];
+
+    /**
+     * Rank <code>itemCount</code> items by their keys.
+     *
+     * @param itemCount the number of items
+     * @param keys the shared array of key values
+     * @param keyStart the position in keys where the key for each item starts
+     * @param keyLength the length of the key for each item
+     * @param ranks the array to fill with the rank of each item
+     * @return the number of distinct ranks
+     */
+    public int rank(int itemCount,
+            int[] keys, int[] keyStart, int[] keyLength, int[] ranks) {
+        if (itemCount == 0) return 0;
+        order = ensure(order, itemCount);
+        scratch = ensure(scratch, itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            order[i] = i;
+        }
+
+        int rank = 0;
+        int top = push(0, 0, itemCount, -1);
+        while (top > 0) {
+            top -= 3;
+            int start = cellStack[top];
+            int end = cellStack[top + 1];
+            int depth = cellStack[top + 2];
+
+            // below the first depth, the items in the cell share a length,
+            // and the cell is finished once every position has been used
+            if (end - start == 1
+                    || (depth >= 0 && depth == keyLength[order[start]])) {
+                rank++;
+                for (int i = start; i < end; i++) {
+                    ranks[order[i]] = rank;
+                }
+                continue;
+            }
+
+            splitCell(start, end, depth, keys, keyStart, keyLength);
+
+            // push the new cells in reverse, so the first is split next
+            int cellEnd = end;
+            for (int i = end - 1; i >= start; i--) {
+                if (i == start ||
+                        valueAt(order[i - 1], depth, keys, keyStart, keyLength)
+                     != valueAt(order[i], depth, keys, keyStart, keyLength)) {
+                    top = push(top, i, cellEnd, depth + 1);
+                    cellEnd = i;
+                }
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * The value used to split cells at a depth, where a depth of -1 means the
+     * key length.
+     */
+    private int valueAt(int item, int depth,
+            int[] keys, int[] keyStart, int[] keyLength) {
+        if (depth == -1) {
+            return keyLength[item];
+        } else {
+            return keys[keyStart[item] + depth];
+        }
+    }
+
+    /**
+     * Reorder the items in the cell by their value at depth, keeping the
+     * existing order of items with equal values.
+     */
+    private void splitCell(int start, int end, int depth,
+            int[] keys, int[] keyStart, int[] keyLength) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = start; i < end; i++) {
+            int value = valueAt(order[i], depth, keys, keyStart, keyLength);
+            if (value < min) min = value;
+            if (value > max) max = value;
+        }
+        if (min == max) return;
+
+        int size = end - start;
+        long range = (long) max - (long) min + 1;
+        if (range > (long) size * MAX_RANGE_FACTOR) {
+            // sparse values - sort (value, position) pairs instead
+            packed = ensure(packed, size);
+            for (int i = start; i < end; i++) {
+                long value =
+                    valueAt(order[i], depth, keys, keyStart, keyLength);
+                packed[i - start] = (value << 32) | (i - start);
+            }
+            Arrays.sort(packed, 0, size);
+            for (int i = 0; i < size; i++) {
+                scratch[i] = order[start + (int) (packed[i] & 0xffffffffL)];
+            }
+        } else {
+            int r = (int) range;
+            counts = ensure(counts, r + 1);
+            Arrays.fill(counts, 0, r + 1, 0);
+            for (int i = start; i < end; i++) {
+                int value = valueAt(order[i], depth, keys, keyStart, keyLength);
+                counts[value - min + 1]++;
+            }
+            for (int i = 0; i < r; i++) {
+                counts[i + 1] += counts[i];
+            }
+            for (int i = start; i < end; i++) {
+                int value = valueAt(order[i], depth, keys, keyStart, keyLength);
+                scratch[counts[value - min]++] = order[i];
+            }
+        }
+        System.arraycopy(scratch, 0, order, start, size);
+    }
+
+    private int push(int top, int start, int end, int depth) {
+        if (top + 3 > cellStack.length) {
+            cellStack = Arrays.copyOf(cellStack, Math.max(24, top * 2 + 3));
+        }
+        cellStack[top] = start;
+        cellStack[top + 1] = end;
+        cellStack[top + 2] = depth;
+        return top + 3;
+    }
+
+    private static int[] ensure(int[] array, int size) {
+        if (array.length < size) {
+            return new int[Math.max(size, array.length * 2)];
+        }
+        return array;
+    }
+
+    private static long[] ensure(long[] array, int size) {
+        if (array.length < size) {
+            return new long[Math.max(size, array.length * 2)];
+        }
+        return array;
+    }
+
+}
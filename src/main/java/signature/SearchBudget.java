@@ -0,0 +1,156 @@
+package signature;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits on the work done by canonization searches : the time they take,
+ * the number of leaves (candidate signature strings) they print, and the 
+ * number of times they refine the vertex invariants. A limit of zero means no
+ * limit. If any limit is passed, the search stops with a 
+ * {@link BudgetExceededException}.
+ * 
+ * A budget is <i>started</i> with {@link #start()}, which fixes its deadline
+ * and gives it counts of the leaves and refinements. Every search that uses a
+ * started budget charges its work to those counts and stops at the same 
+ * deadline, so the limits are on all of the searches together - for example,
+ * on all the vertex searches for a graph. A search given a budget that has
+ * not been started starts a copy of it for itself.
+ */
+public class SearchBudget {
+
+    private final long maxMillis;
+
+    private final int maxLeaves;
+
+    private final int maxRefinements;
+
+    /**
+     * When a started budget was started, in the units of 
+     * {@link System#nanoTime()}, and when it runs out of time
+     */
+    private final long startTime;
+
+    private final long deadline;
+
+    /**
+     * The work charged to a started budget, or null if it is not started
+     */
+    private final AtomicInteger leafCount;
+
+    private final AtomicInteger refinementCount;
+
+    /**
+     * @param maxMillis the longest time the searches can take, in milliseconds
+     * @param maxLeaves the most candidate strings the searches can print
+     * @param maxRefinements the most refinements of the invariants
+     */
+    public SearchBudget(long maxMillis, int maxLeaves, int maxRefinements) {
+        this.maxMillis = maxMillis;
+        this.maxLeaves = maxLeaves;
+        this.maxRefinements = maxRefinements;
+        this.startTime = -1;
+        this.deadline = Long.MAX_VALUE;
+        this.leafCount = null;
+        this.refinementCount = null;
+    }
+
+    private SearchBudget(SearchBudget limits, long startTime) {
+        this.maxMillis = limits.maxMillis;
+        this.maxLeaves = limits.maxLeaves;
+        this.maxRefinements = limits.maxRefinements;
+        this.startTime = startTime;
+        if (maxMillis <= 0) {
+            this.deadline = Long.MAX_VALUE;
+        } else {
+            this.deadline = startTime + (maxMillis * 1000000L);
+        }
+        this.leafCount = new AtomicInteger();
+        this.refinementCount = new AtomicInteger();
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public int getMaxLeaves() {
+        return maxLeaves;
+    }
+
+    public int getMaxRefinements() {
+        return maxRefinements;
+    }
+
+    /**
+     * Start a copy of this budget now, with a fixed deadline and no work 
+     * charged to it yet.
+     * 
+     * @return the started budget
+     */
+    public SearchBudget start() {
+        return new SearchBudget(this, System.nanoTime());
+    }
+
+    /**
+     * @return true if this budget has been started, so that its deadline and
+     *         counts are shared by the searches that use it
+     */
+    public boolean isStarted() {
+        return leafCount != null;
+    }
+
+    /**
+     * @return the number of leaves charged to this budget, or 0 if it is not
+     *         started
+     */
+    public int getLeafCount() {
+        return (leafCount == null) ? 0 : leafCount.get();
+    }
+
+    /**
+     * @return the number of refinements charged to this budget, or 0 if it is
+     *         not started
+     */
+    public int getRefinementCount() {
+        return (refinementCount == null) ? 0 : refinementCount.get();
+    }
+
+    /**
+     * Charge a leaf to a started budget.
+     */
+    void chargeLeaf() {
+        leafCount.incrementAndGet();
+    }
+
+    /**
+     * Charge a refinement to a started budget, and check the limits.
+     * 
+     * @throws BudgetExceededException if a limit has been passed, or if the 
+     *         thread has been interrupted
+     */
+    void chargeRefinement() {
+        int refinements = refinementCount.incrementAndGet();
+        int leaves = leafCount.get();
+        BudgetExceededException.Limit limit = null;
+        long now = System.nanoTime();
+        if (Thread.currentThread().isInterrupted()) {
+            limit = BudgetExceededException.Limit.INTERRUPTED;
+        } else if (now > deadline) {
+            limit = BudgetExceededException.Limit.TIME;
+        } else if (maxLeaves > 0 && leaves >= maxLeaves) {
+            limit = BudgetExceededException.Limit.LEAVES;
+        } else if (maxRefinements > 0 && refinements > maxRefinements) {
+            limit = BudgetExceededException.Limit.REFINEMENTS;
+        }
+        if (limit != null) {
+            long elapsedMillis = (now - startTime) / 1000000L;
+            throw new BudgetExceededException(
+                    limit, elapsedMillis, leaves, refinements);
+        }
+    }
+
+    public String toString() {
+        return "SearchBudget[" + maxMillis + "ms, " + maxLeaves + " leaves, " 
+            + maxRefinements + " refinements]";
+    }
+
+}
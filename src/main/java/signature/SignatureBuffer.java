@@ -0,0 +1,210 @@
+package signature;
+
+import java.util.Arrays;
+
+/**
+ * A character buffer for printing signature strings into, that can compare
+ * what has been printed so far against a bound - another buffer. Once the
+ * printed prefix is known to be less than the bound, the rest of the string
+ * cannot change that, so printing can stop early. In the same way, it can
+ * compare against a ceiling, and tell once the printed prefix is above it.
+ * 
+ * The buffer also records the vertex that each printed node was for, so that
+ * two equal signature strings can be matched up vertex by vertex.
+ */
+public class SignatureBuffer {
+
+    private char[] chars;
+
+    private int length;
+
+    private SignatureBuffer bound;
+
+    /**
+     * The vertex indices of the printed nodes, in the order they were printed
+     */
+    private int[] vertices;
+
+    private int vertexCount;
+
+    /**
+     * The comparison of the printed prefix against the bound : zero while they
+     * are equal, and then the sign of the first difference
+     */
+    private int comparison;
+
+    private SignatureBuffer ceiling;
+
+    /**
+     * The comparison of the printed prefix against the ceiling, in the same
+     * way as for the bound
+     */
+    private int ceilingComparison;
+
+    public SignatureBuffer() {
+        this.chars = new char[64];
+        this.length = 0;
+        this.vertices = new int[16];
+        this.vertexCount = 0;
+    }
+
+    /**
+     * Empty the buffer, keeping the allocated storage.
+     *
+     * @param bound the buffer to compare against as characters are added, or
+     *        null to compare against nothing
+     */
+    public void reset(SignatureBuffer bound) {
+        reset(bound, null);
+    }
+
+    /**
+     * Empty the buffer, keeping the allocated storage.
+     *
+     * @param bound the buffer to compare against as characters are added, or
+     *        null to compare against nothing
+     * @param ceiling a second buffer to compare against, or null for none
+     */
+    public void reset(SignatureBuffer bound, SignatureBuffer ceiling) {
+        this.length = 0;
+        this.vertexCount = 0;
+        this.bound = bound;
+        this.comparison = (bound == null) ? 1 : 0;
+        this.ceiling = ceiling;
+        this.ceilingComparison = (ceiling == null) ? -1 : 0;
+    }
+
+    public SignatureBuffer append(char c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+        if (comparison == 0) {
+            comparison = compareAt(bound, c);
+        }
+        if (ceilingComparison == 0) {
+            ceilingComparison = compareAt(ceiling, c);
+        }
+        chars[length] = c;
+        length++;
+        return this;
+    }
+
+    /**
+     * Compare a character appended at the current length against the same
+     * position in another buffer, where the other buffer has been equal so
+     * far.
+     */
+    private int compareAt(SignatureBuffer other, char c) {
+        if (length >= other.length || c > other.chars[length]) {
+            return 1;
+        } else if (c < other.chars[length]) {
+            return -1;
+        } else {
+            return 0;
+        }
+    }
+
+    public SignatureBuffer append(String s) {
+        s = String.valueOf(s);
+        for (int i = 0; i < s.length(); i++) {
+            append(s.charAt(i));
+        }
+        return this;
+    }
+
+    public SignatureBuffer append(int i) {
+        return append(Integer.toString(i));
+    }
+
+    /**
+     * Record that a node for a vertex has been printed.
+     *
+     * @param vertexIndex the index of the vertex
+     */
+    public void addVertex(int vertexIndex) {
+        if (vertexCount == vertices.length) {
+            vertices = Arrays.copyOf(vertices, vertexCount * 2);
+        }
+        vertices[vertexCount] = vertexIndex;
+        vertexCount++;
+    }
+
+    /**
+     * @param i the position of a printed node
+     * @return the index of the vertex of the i<sup>th</sup> printed node
+     */
+    public int getVertex(int i) {
+        return vertices[i];
+    }
+
+    /**
+     * @return the number of printed nodes
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return true if what has been printed is already less than the bound
+     */
+    public boolean isBelowBound() {
+        return comparison < 0;
+    }
+
+    /**
+     * Compare the whole of the buffer against the bound, in the same way as
+     * {@link String#compareTo(String)}.
+     *
+     * @return the sign of the comparison
+     */
+    public int compareToBound() {
+        if (comparison != 0) {
+            return comparison;
+        } else if (length < bound.length) {
+            return -1;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * @return true if what has been printed is already greater than the 
+     *         ceiling
+     */
+    public boolean isAboveCeiling() {
+        return ceilingComparison > 0;
+    }
+
+    /**
+     * Compare the whole of the buffer against the ceiling, in the same way as
+     * {@link String#compareTo(String)}.
+     *
+     * @return the sign of the comparison, or -1 if there is no ceiling
+     */
+    public int compareToCeiling() {
+        if (ceilingComparison != 0) {
+            return ceilingComparison;
+        } else if (length < ceiling.length) {
+            return -1;
+        } else {
+            return 0;
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the fingerprint of the characters in the buffer, without
+     *         copying them into a string
+     */
+    public Fingerprint toFingerprint() {
+        return new FingerprintHasher().update(chars, 0, length).finish();
+    }
+
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+}
@@ -0,0 +1,51 @@
+package signature;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A table of compact signatures, so that equal signatures can share a single
+ * copy - for example, the signatures of the vertices in a symmetry class, or
+ * of the same atom environment in many molecules.
+ */
+public class SignatureInterner {
+
+    private final Map<CompactSignature, CompactSignature> signatures;
+
+    public SignatureInterner() {
+        this.signatures = new HashMap<CompactSignature, CompactSignature>();
+    }
+
+    /**
+     * Encode a signature string, and get the shared copy of it.
+     *
+     * @param signatureString the signature string
+     * @return the shared compact signature
+     */
+    public CompactSignature intern(String signatureString) {
+        return intern(CompactSignature.encode(signatureString));
+    }
+
+    /**
+     * Get the shared copy of a signature, adding it if there is none.
+     *
+     * @param signature the signature to share
+     * @return the shared copy, which is equal to the signature
+     */
+    public CompactSignature intern(CompactSignature signature) {
+        CompactSignature shared = signatures.get(signature);
+        if (shared == null) {
+            shared = signature;
+            signatures.put(shared, shared);
+        }
+        return shared;
+    }
+
+    /**
+     * @return the number of different signatures in the table
+     */
+    public int size() {
+        return signatures.size();
+    }
+
+}
@@ -0,0 +1,65 @@
+package signature;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the vertex signature strings made for one graph, by vertex and 
+ * height, up to a fixed number of them. The least recently used string is 
+ * forgotten to make room for a new one. The strings are kept in compact 
+ * form, and decoded when they are looked up.
+ */
+class SignatureStringMemo {
+
+    private final Map<Long, CompactSignature> signatureStrings;
+
+    public SignatureStringMemo(final int capacity) {
+        this.signatureStrings = 
+            new LinkedHashMap<Long, CompactSignature>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(
+                    Map.Entry<Long, CompactSignature> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Pack the vertex and height into one number. The height is at least -1,
+     * so it fits in the lower half.
+     */
+    private Long key(int vertexIndex, int height) {
+        return ((long) vertexIndex << 32) | (height + 1);
+    }
+
+    public String get(int vertexIndex, int height) {
+        CompactSignature compact = getCompact(vertexIndex, height);
+        return (compact == null) ? null : compact.toString();
+    }
+
+    public synchronized CompactSignature getCompact(
+            int vertexIndex, int height) {
+        return signatureStrings.get(key(vertexIndex, height));
+    }
+
+    public synchronized boolean contains(int vertexIndex, int height) {
+        return signatureStrings.containsKey(key(vertexIndex, height));
+    }
+
+    public void put(int vertexIndex, int height, String signatureString) {
+        CompactSignature compact = CompactSignature.encode(signatureString);
+        synchronized (this) {
+            signatureStrings.put(key(vertexIndex, height), compact);
+        }
+    }
+
+    public synchronized void clear() {
+        signatureStrings.clear();
+    }
+
+    public synchronized int size() {
+        return signatureStrings.size();
+    }
+
+}
@@ -14,9 +14,9 @@ import java.util.TreeSet;
 public class SymmetryClass implements Comparable<SymmetryClass>, Iterable<Integer> {
     
     /**
-     * The signature string that the vertices all share
+     * The signature that the vertices all share, in compact form
      */
-    private final String signatureString;
+    private final CompactSignature signature;
     
     /**
      * The set of vertex indices that have this signature string
@@ -29,8 +29,17 @@ public class SymmetryClass implements Comparable<SymmetryClass>, Iterable<Intege
      * @param signatureString the signature string for this symmetry class
      */
     public SymmetryClass(String signatureString) {
-       this.signatureString = signatureString;
-       this.vertexIndices = new TreeSet<Integer>();
+       this(CompactSignature.encode(signatureString));
+    }
+    
+    /**
+     * Make a symmetry class for a signature in compact form.
+     * 
+     * @param signature the signature for this symmetry class
+     */
+    public SymmetryClass(CompactSignature signature) {
+        this.signature = signature;
+        this.vertexIndices = new TreeSet<Integer>();
     }
     
     public Iterator<Integer> iterator() {
@@ -42,7 +51,11 @@ public class SymmetryClass implements Comparable<SymmetryClass>, Iterable<Intege
     }
 
     public String getSignatureString() {
-        return this.signatureString;
+        return this.signature.toString();
+    }
+    
+    public CompactSignature getCompactSignature() {
+        return this.signature;
     }
     
     /**
@@ -52,7 +65,7 @@ public class SymmetryClass implements Comparable<SymmetryClass>, Iterable<Intege
      * @return true if the strings are equal
      */
     public boolean hasSignature(String otherSignatureString) {
-        return this.signatureString.equals(otherSignatureString);
+        return this.signature.matches(otherSignatureString);
     }
     
     /**
@@ -98,11 +111,12 @@ public class SymmetryClass implements Comparable<SymmetryClass>, Iterable<Intege
      * @see java.lang.Comparable#compareTo(java.lang.Object)
      */
     public int compareTo(SymmetryClass o) {
-        return this.signatureString.compareTo(o.signatureString);
+        // the compact signatures are in the same order as the strings
+        return this.signature.compareTo(o.signature);
     }
     
     public String toString() {
-        return this.signatureString + " " + this.vertexIndices;
+        return getSignatureString() + " " + this.vertexIndices;
     }
     
 }
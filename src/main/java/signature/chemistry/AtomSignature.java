@@ -26,6 +26,21 @@ public class AtomSignature extends AbstractVertexSignature {
         this.create(atomNumber, molecule.getAtomCount(), height);
     }
     
+    /**
+     * Make the signature of the same atom as a taller signature, but with a 
+     * smaller height, by copying the first layers of its DAG. 
+     * 
+     * @param taller a signature that has not been canonized yet
+     * @param height the height of the new signature
+     * @param invariantType the invariant type of the taller signature
+     */
+    AtomSignature(AtomSignature taller, int height, 
+            AbstractVertexSignature.InvariantType invariantType) {
+        super(invariantType);
+        this.molecule = taller.molecule;
+        this.createFromPrefix(taller, height);
+    }
+    
     public int getIntLabel(int vertexIndex) {
         String symbol = getVertexSymbol(vertexIndex);
         
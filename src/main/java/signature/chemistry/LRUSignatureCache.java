@@ -0,0 +1,79 @@
+package signature.chemistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of signatures in memory, that holds up to a fixed number of them 
+ * and removes the least recently used to make room. It can be put in front 
+ * of a slower cache, such as a {@link MappedFileSignatureCache}, which is 
+ * then only used for signatures that are not in memory.
+ */
+public class LRUSignatureCache implements SignatureCache {
+
+    private final Map<MoleculeKey, String> signatures;
+
+    private final SignatureCache next;
+
+    /**
+     * @param capacity the most signatures to hold
+     */
+    public LRUSignatureCache(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * @param capacity the most signatures to hold
+     * @param next the cache to use for signatures that are not held, or null
+     */
+    public LRUSignatureCache(final int capacity, SignatureCache next) {
+        this.signatures = 
+            new LinkedHashMap<MoleculeKey, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(
+                    Map.Entry<MoleculeKey, String> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.next = next;
+    }
+
+    public String get(MoleculeKey key) {
+        synchronized (signatures) {
+            String signature = signatures.get(key);
+            if (signature != null) {
+                return signature;
+            }
+        }
+        if (next == null) {
+            return null;
+        }
+        String signature = next.get(key);
+        if (signature != null) {
+            synchronized (signatures) {
+                signatures.put(key, signature);
+            }
+        }
+        return signature;
+    }
+
+    public void put(MoleculeKey key, String signature) {
+        synchronized (signatures) {
+            signatures.put(key, signature);
+        }
+        if (next != null) {
+            next.put(key, signature);
+        }
+    }
+
+    /**
+     * @return the number of signatures held in memory
+     */
+    public int size() {
+        synchronized (signatures) {
+            return signatures.size();
+        }
+    }
+
+}
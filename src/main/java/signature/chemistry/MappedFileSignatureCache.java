@@ -0,0 +1,283 @@
+package signature.chemistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A cache of signatures in a file, which keeps them between runs. Signatures
+ * are only ever appended to the file, and it is read through a memory map of
+ * a window at a time, so files larger than 2GB can be used. Only an index of
+ * the hash and position of each record is kept in memory, in arrays of 
+ * primitives rather than as a boxed object per record.
+ * 
+ * Each record is the length of the rest of the record, the hash of the key,
+ * and then the structure of the key and the signature, each as a length and
+ * UTF-8 bytes. If the last record was not completely written (for example,
+ * if the program was stopped while writing it) it is removed when the file
+ * is opened. A record with a bad length before that is an error, so that a 
+ * damaged file does not lose the records after the damage.
+ */
+public class MappedFileSignatureCache implements SignatureCache, Closeable {
+
+    /**
+     * The size of the fixed parts of a record, after its length
+     */
+    private static final int HEADER_SIZE = 8 + 4 + 4;
+
+    private static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    /**
+     * The hashes in the open-addressed table, by slot
+     */
+    private long[] slotHashes;
+
+    /**
+     * The last record with the hash in each slot, plus one - or 0 if the 
+     * slot is empty
+     */
+    private int[] slotRecords;
+
+    /**
+     * The position in the file of each record, in the order they were added
+     */
+    private long[] positions;
+
+    /**
+     * The record added before each record with the same hash, or -1
+     */
+    private int[] previous;
+
+    /**
+     * The number of records in the index
+     */
+    private int recordCount;
+
+    /**
+     * The size of the file, up to the end of the last complete record
+     */
+    private long size;
+
+    /**
+     * The size of the region of the file to map at once
+     */
+    private final int windowSize;
+
+    /**
+     * A region of the file, mapped for reading, or null if none is mapped
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * The position in the file of the start of the window
+     */
+    private long windowStart;
+
+    public MappedFileSignatureCache(String filename) throws IOException {
+        this(filename, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedFileSignatureCache(String filename, int windowSize) 
+            throws IOException {
+        this.windowSize = windowSize;
+        this.channel = FileChannel.open(Paths.get(filename), 
+                StandardOpenOption.CREATE, 
+                StandardOpenOption.READ, 
+                StandardOpenOption.WRITE);
+        this.slotHashes = new long[INITIAL_CAPACITY];
+        this.slotRecords = new int[INITIAL_CAPACITY];
+        this.positions = new long[INITIAL_CAPACITY];
+        this.previous = new int[INITIAL_CAPACITY];
+        try {
+            readIndex();
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+    }
+
+    private void readIndex() throws IOException {
+        size = channel.size();
+        long position = 0;
+        while (position + 4 <= size) {
+            int offset = map(position, 4);
+            int length = window.getInt(offset);
+            if (length >= 0 && position + 4 + length > size) {
+                break;
+            }
+            if (length < HEADER_SIZE) {
+                throw new IOException("Bad record length " + length 
+                        + " at position " + position);
+            }
+            offset = map(position, 4 + 8);
+            long hash = window.getLong(offset + 4);
+            addToIndex(hash, position);
+            position += 4 + length;
+        }
+        if (position < size) {
+            // an incomplete record at the end
+            window = null;
+            channel.truncate(position);
+            size = position;
+        }
+    }
+
+    /**
+     * Make sure that the window holds a range of the file, mapping a new one
+     * starting at the range if it does not.
+     * 
+     * @param position the position in the file of the start of the range
+     * @param length the length of the range
+     * @return the position of the start of the range in the window
+     */
+    private int map(long position, int length) throws IOException {
+        if (window == null || position < windowStart 
+                || position + length > windowStart + window.limit()) {
+            long end = Math.min(size, position + Math.max(windowSize, length));
+            window = channel.map(
+                    FileChannel.MapMode.READ_ONLY, position, end - position);
+            windowStart = position;
+        }
+        return (int) (position - windowStart);
+    }
+
+    /**
+     * @return the slot in the table for a hash - either the one holding it, 
+     *         or the empty one where it would go
+     */
+    private int slot(long hash) {
+        int mask = slotHashes.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (slotRecords[slot] != 0 && slotHashes[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void addToIndex(long hash, long position) {
+        if (recordCount == positions.length) {
+            positions = Arrays.copyOf(positions, recordCount * 2);
+            previous = Arrays.copyOf(previous, recordCount * 2);
+        }
+        // keep the table at most half full
+        if (recordCount * 2 >= slotHashes.length) {
+            long[] oldHashes = slotHashes;
+            int[] oldRecords = slotRecords;
+            slotHashes = new long[oldHashes.length * 2];
+            slotRecords = new int[oldRecords.length * 2];
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldRecords[i] != 0) {
+                    int slot = slot(oldHashes[i]);
+                    slotHashes[slot] = oldHashes[i];
+                    slotRecords[slot] = oldRecords[i];
+                }
+            }
+        }
+        int slot = slot(hash);
+        positions[recordCount] = position;
+        previous[recordCount] = slotRecords[slot] - 1;
+        slotHashes[slot] = hash;
+        recordCount++;
+        slotRecords[slot] = recordCount;
+    }
+
+    public synchronized String get(MoleculeKey key) {
+        int record = slotRecords[slot(key.getHash())] - 1;
+        if (record == -1) {
+            return null;
+        }
+        byte[] structure = key.getStructure().getBytes(StandardCharsets.UTF_8);
+        try {
+            for (; record != -1; record = previous[record]) {
+                long position = positions[record];
+                int offset = map(position, 4);
+                int length = window.getInt(offset);
+                offset = map(position, 4 + length);
+                String signature = readIfMatches(offset, structure);
+                if (signature != null) {
+                    return signature;
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return null;
+    }
+
+    /**
+     * @return the signature in the record at a position in the window, if 
+     *         the structure in the record is the same, or null
+     */
+    private String readIfMatches(int position, byte[] structure) {
+        int structurePosition = position + 4 + 8;
+        int structureLength = window.getInt(structurePosition);
+        if (structureLength != structure.length) {
+            return null;
+        }
+        int start = structurePosition + 4;
+        for (int i = 0; i < structureLength; i++) {
+            if (window.get(start + i) != structure[i]) {
+                return null;
+            }
+        }
+        int signaturePosition = start + structureLength;
+        int signatureLength = window.getInt(signaturePosition);
+        byte[] signature = new byte[signatureLength];
+        for (int i = 0; i < signatureLength; i++) {
+            signature[i] = window.get(signaturePosition + 4 + i);
+        }
+        return new String(signature, StandardCharsets.UTF_8);
+    }
+
+    public synchronized void put(MoleculeKey key, String signature) {
+        if (get(key) != null) {
+            return;
+        }
+        byte[] structure = key.getStructure().getBytes(StandardCharsets.UTF_8);
+        byte[] signatureBytes = signature.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_SIZE + structure.length + signatureBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(4 + length);
+        record.putInt(length);
+        record.putLong(key.getHash());
+        record.putInt(structure.length);
+        record.put(structure);
+        record.putInt(signatureBytes.length);
+        record.put(signatureBytes);
+        record.flip();
+        try {
+            long position = size;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        addToIndex(key.getHash(), size);
+        size += 4 + length;
+    }
+
+    /**
+     * @return the number of signatures in the file
+     */
+    public synchronized int size() {
+        return recordCount;
+    }
+
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+        window = null;
+    }
+
+}
@@ -0,0 +1,421 @@
+package signature.chemistry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the molecules in an SDFile by mapping the file into memory, and 
+ * decoding the fixed columns of the V2000 counts, atom and bond lines where
+ * they are in the mapped bytes - without making a string for each line. The
+ * fields of a record are decoded into arrays that are reused for every
+ * record, and the only objects made per record are those of the molecule
+ * and its title.
+ * 
+ * The file is mapped a window at a time, so files larger than 2GB can be 
+ * read. The molecules are the same as those from {@link SDFReader}, and 
+ * records that cannot be made into a molecule are skipped in the same way.
+ */
+public class MappedSDFReader implements Iterator<Molecule>, 
+                                        Iterable<Molecule>, Closeable {
+
+    private static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+
+    private final long fileSize;
+
+    /**
+     * The size of the region of the file to map at once
+     */
+    private int windowSize;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * The position in the file of the start of the buffer
+     */
+    private long bufferStart;
+
+    /**
+     * The position in the file of the start of the next record
+     */
+    private long position;
+
+    /**
+     * The position in the file after the end of the current record
+     */
+    private long nextPosition;
+
+    /**
+     * The start and end of each line in the current record, in the buffer
+     */
+    private int[] lineStarts;
+
+    private int[] lineEnds;
+
+    private int lineCount;
+
+    private String[] atomSymbols;
+
+    private int[] bondAtomsA;
+
+    private int[] bondAtomsB;
+
+    private int[] bondOrders;
+
+    /**
+     * Symbols already seen, keyed by their packed bytes
+     */
+    private final Map<Integer, String> symbols;
+
+    private Molecule next;
+
+    private int recordIndex;
+
+    private boolean finished;
+
+    private int skippedCount;
+
+    private SkippedRecordListener listener;
+
+    public MappedSDFReader(String filename) throws IOException {
+        this(filename, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedSDFReader(String filename, int windowSize) throws IOException {
+        this.channel = 
+            FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.windowSize = windowSize;
+        this.lineStarts = new int[64];
+        this.lineEnds = new int[64];
+        this.atomSymbols = new String[32];
+        this.bondAtomsA = new int[32];
+        this.bondAtomsB = new int[32];
+        this.bondOrders = new int[32];
+        this.symbols = new HashMap<Integer, String>();
+        this.position = 0;
+        this.recordIndex = 0;
+        this.finished = false;
+        if (fileSize > 0) {
+            map(0);
+        }
+    }
+
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                next = readNext();
+            } catch (IOException ioe) {
+                finished = true;
+                throw new UncheckedIOException(ioe);
+            }
+        }
+        return next != null;
+    }
+
+    public Molecule next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Molecule molecule = next;
+        next = null;
+        return molecule;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return this reader, so that it can be used in a for-each loop - which
+     *         can only be done once
+     */
+    public Iterator<Molecule> iterator() {
+        return this;
+    }
+
+    /**
+     * @return the number of records read so far, including any skipped
+     */
+    public int getRecordCount() {
+        return recordIndex;
+    }
+
+    /**
+     * @return the number of records skipped so far, because they could not be
+     *         made into a molecule
+     */
+    public int getSkippedRecordCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Set a listener to tell about each record that is skipped.
+     * 
+     * @param listener the listener, or null for none
+     */
+    public void setSkippedRecordListener(SkippedRecordListener listener) {
+        this.listener = listener;
+    }
+
+    public void close() throws IOException {
+        finished = true;
+        buffer = null;
+        channel.close();
+    }
+
+    private Molecule readNext() throws IOException {
+        while (findRecord()) {
+            Molecule molecule = null;
+            try {
+                molecule = makeMolecule();
+            } catch (RuntimeException e) {
+                skippedCount++;
+                if (listener != null) {
+                    listener.recordSkipped(recordIndex, e);
+                }
+            }
+            recordIndex++;
+            position = nextPosition;
+            if (molecule != null) {
+                return molecule;
+            }
+        }
+        finished = true;
+        return null;
+    }
+
+    private void map(long start) throws IOException {
+        long size = Math.min(windowSize, fileSize - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        bufferStart = start;
+    }
+
+    /**
+     * Find the lines of the record at the current position, up to the line
+     * starting with '$$$$' that ends it.
+     * 
+     * @return false if there are no more complete records
+     */
+    private boolean findRecord() throws IOException {
+        while (position < fileSize) {
+            lineCount = 0;
+            int limit = buffer.limit();
+            boolean atEndOfFile = bufferStart + limit == fileSize;
+            int p = (int) (position - bufferStart);
+            while (p < limit) {
+                int end = p;
+                while (end < limit && buffer.get(end) != '\n') {
+                    end++;
+                }
+                if (end == limit && !atEndOfFile) {
+                    // the line may carry on past the window
+                    break;
+                }
+                int contentEnd = end;
+                if (contentEnd > p && buffer.get(contentEnd - 1) == '\r') {
+                    contentEnd--;
+                }
+                if (isTerminator(p, contentEnd)) {
+                    nextPosition = bufferStart + Math.min(end + 1, limit);
+                    return true;
+                }
+                addLine(p, contentEnd);
+                p = end + 1;
+            }
+            if (atEndOfFile) {
+                // a last record without a terminator is not read
+                return false;
+            }
+            if (bufferStart == position) {
+                // the record does not fit in a whole window
+                if (windowSize == Integer.MAX_VALUE) {
+                    throw new IOException(
+                            "Record " + recordIndex + " is too long to map");
+                }
+                windowSize = (int) Math.min(2L * windowSize, Integer.MAX_VALUE);
+            }
+            map(position);
+        }
+        return false;
+    }
+
+    private boolean isTerminator(int start, int end) {
+        if (end - start < 4) return false;
+        for (int i = start; i < start + 4; i++) {
+            if (buffer.get(i) != '$') return false;
+        }
+        return true;
+    }
+
+    private void addLine(int start, int end) {
+        if (lineCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+            lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+        }
+        lineStarts[lineCount] = start;
+        lineEnds[lineCount] = end;
+        lineCount++;
+    }
+
+    private Molecule makeMolecule() {
+        // counts are on the fourth line
+        int atomCount = parseInt(3, 0, 3);
+        int bondCount = parseInt(3, 3, 6);
+        ensureCapacity(atomCount, bondCount);
+
+        // atom block starts on the fifth line (4th index)
+        int atomLineStart = 4;
+        int atomLineEnd = atomCount + atomLineStart;
+        for (int i = atomLineStart; i < atomLineEnd; i++) {
+            atomSymbols[i - atomLineStart] = parseSymbol(i, 30, 33);
+        }
+
+        int bondsRead = 0;
+        if (atomCount > 1) {
+            // bond block starts right after the atom block
+            for (int i = 0; i < bondCount; i++) {
+                int line = atomLineEnd + i;
+                bondAtomsA[i] = parseInt(line, 0, 3);
+                bondAtomsB[i] = parseInt(line, 3, 6);
+                // the same columns as MoleculeReader, to get the same bonds
+                bondOrders[i] = parseInt(line, 7, 10);
+            }
+            bondsRead = bondCount;
+        }
+
+        Molecule molecule = new Molecule();
+        // the title is on the first line
+        molecule.name = lineString(0);
+        for (int i = 0; i < atomCount; i++) {
+            molecule.addAtom(i, atomSymbols[i]);
+        }
+        for (int i = 0; i < bondsRead; i++) {
+            molecule.addBond(bondAtomsA[i] - 1, bondAtomsB[i] - 1, 
+                    MoleculeReader.convertIntToBondOrder(bondOrders[i]));
+        }
+        return molecule;
+    }
+
+    private void ensureCapacity(int atomCount, int bondCount) {
+        if (atomCount > atomSymbols.length) {
+            int size = Math.max(atomCount, atomSymbols.length * 2);
+            atomSymbols = new String[size];
+        }
+        if (bondCount > bondOrders.length) {
+            int size = Math.max(bondCount, bondOrders.length * 2);
+            bondAtomsA = new int[size];
+            bondAtomsB = new int[size];
+            bondOrders = new int[size];
+        }
+    }
+
+    /**
+     * Decode a whole line, with the default charset - as the lines read by
+     * {@link SDFReader} are.
+     */
+    private String lineString(int line) {
+        int start = lineStarts[line];
+        byte[] bytes = new byte[lineEnds[line] - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, Charset.defaultCharset());
+    }
+
+    /**
+     * @return the position in the buffer of the start of a column in a line
+     */
+    private int fieldStart(int line, int from, int to) {
+        if (line >= lineCount) {
+            throw new IllegalArgumentException("Missing line " + line);
+        }
+        int start = lineStarts[line];
+        if (start + to > lineEnds[line]) {
+            throw new IllegalArgumentException("Line " + line + " too short");
+        }
+        return start + from;
+    }
+
+    /**
+     * Decode an integer in the columns <code>from</code> (inclusive) to 
+     * <code>to</code> (exclusive) of a line, in the same way as 
+     * <code>Integer.parseInt(field.trim())</code> : the field is trimmed, and 
+     * then must be an optional sign followed by digits.
+     */
+    private int parseInt(int line, int from, int to) {
+        int start = fieldStart(line, from, to);
+        int end = start + (to - from);
+        while (start < end && isTrimmed(buffer.get(start))) start++;
+        while (end > start && isTrimmed(buffer.get(end - 1))) end--;
+        boolean negative = false;
+        if (start < end) {
+            byte sign = buffer.get(start);
+            if (sign == '-' || sign == '+') {
+                negative = (sign == '-');
+                start++;
+            }
+        }
+        if (start == end) {
+            throw new NumberFormatException("No number in line " + line);
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                value = (value * 10) + (b - '0');
+            } else {
+                throw new NumberFormatException(
+                        "Bad character in line " + line + " : " + (char) b);
+            }
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return true for the characters that <code>String.trim()</code> removes
+     */
+    private static boolean isTrimmed(byte b) {
+        return (b & 0xff) <= ' ';
+    }
+
+    /**
+     * Get the symbol in the columns of a line, trimmed in the same way as by 
+     * <code>String.trim()</code>. The symbol strings are shared, so most 
+     * records make none.
+     */
+    private String parseSymbol(int line, int from, int to) {
+        int start = fieldStart(line, from, to);
+        int end = start + (to - from);
+        while (start < end && isTrimmed(buffer.get(start))) start++;
+        while (end > start && isTrimmed(buffer.get(end - 1))) end--;
+        int key = 0;
+        for (int i = start; i < end; i++) {
+            key = (key << 8) | (buffer.get(i) & 0xff);
+        }
+        String symbol = symbols.get(key);
+        if (symbol == null) {
+            byte[] bytes = new byte[end - start];
+            for (int i = start; i < end; i++) {
+                bytes[i - start] = buffer.get(i);
+            }
+            symbol = new String(bytes, StandardCharsets.ISO_8859_1);
+            symbols.put(key, symbol);
+        }
+        return symbol;
+    }
+
+}
@@ -112,10 +112,79 @@ public class Molecule {
         }
     }
     
+    /**
+     * A compressed-sparse-row index of the bonds : the neighbours of atom i
+     * are at neighbours[offsets[i]] up to neighbours[offsets[i + 1]], with
+     * the order of each bond at the same position in orders. Neighbours are
+     * in the same order as the bonds list.
+     */
+    private static class Adjacency {
+        
+        final int[] offsets;
+        
+        final int[] neighbours;
+        
+        final BondOrder[] orders;
+        
+        Adjacency(List<Bond> bonds, int atomCount) {
+            int size = atomCount;
+            for (Bond bond : bonds) {
+                size = Math.max(size, Math.max(bond.a.index, bond.b.index) + 1);
+            }
+            offsets = new int[size + 1];
+            for (Bond bond : bonds) {
+                offsets[bond.a.index + 1]++;
+                if (bond.a.index != bond.b.index) {
+                    offsets[bond.b.index + 1]++;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            neighbours = new int[offsets[size]];
+            orders = new BondOrder[offsets[size]];
+            int[] fill = new int[size];
+            for (Bond bond : bonds) {
+                int a = bond.a.index;
+                int b = bond.b.index;
+                int slot = offsets[a] + fill[a]++;
+                neighbours[slot] = b;
+                orders[slot] = bond.order;
+                if (a != b) {
+                    slot = offsets[b] + fill[b]++;
+                    neighbours[slot] = a;
+                    orders[slot] = bond.order;
+                }
+            }
+        }
+        
+        boolean hasAtom(int atomIndex) {
+            return atomIndex >= 0 && atomIndex < offsets.length - 1;
+        }
+        
+        /**
+         * @return the position of b in the neighbours of a, or -1 if none
+         */
+        int find(int a, int b) {
+            if (!hasAtom(a)) return -1;
+            for (int k = offsets[a]; k < offsets[a + 1]; k++) {
+                if (neighbours[k] == b) {
+                    return k;
+                }
+            }
+            return -1;
+        }
+    }
+    
     private List<Atom> atoms;
     
     private List<Bond> bonds;
     
+    /**
+     * Lazily built from the bonds, and thrown away when they change
+     */
+    private Adjacency adjacency;
+    
     public String name;
     
     public Molecule() {
@@ -170,42 +239,58 @@ public class Molecule {
         return this.bonds.size();
     }
     
+    /**
+     * Get the bonds of the molecule. The list cannot be changed, so that the
+     * neighbour index always matches the bonds - use 
+     * {@link #addBond(int, int, BondOrder)} to add a bond.
+     * 
+     * @return the list of bonds
+     */
     public List<Bond> bonds() {
-        return bonds; 
+        return Collections.unmodifiableList(bonds); 
     }
     
-    public int[] getConnected(int atomIndex) {
-        List<Integer> connectedList = new ArrayList<Integer>();
-        
-        for (Bond bond : this.bonds) {
-            int connectedIndex = bond.getConnected(atomIndex);
-            if (connectedIndex != -1) {
-                connectedList.add(connectedIndex);
-            }
+    private Adjacency getAdjacency() {
+        Adjacency current = this.adjacency;
+        if (current == null) {
+            current = new Adjacency(bonds, atoms.size());
+            this.adjacency = current;
         }
-        int[] connected = new int[connectedList.size()];
-        for (int i = 0; i < connectedList.size(); i++) {
-            connected[i] = connectedList.get(i);
+        return current;
+    }
+    
+    public int[] getConnected(int atomIndex) {
+        Adjacency adj = getAdjacency();
+        if (!adj.hasAtom(atomIndex)) {
+            return new int[0];
         }
+        int start = adj.offsets[atomIndex];
+        int end = adj.offsets[atomIndex + 1];
+        int[] connected = new int[end - start];
+        System.arraycopy(adj.neighbours, start, connected, 0, end - start);
         return connected;
     }
     
-    public boolean isConnected(int i, int j) {
-        for (Bond bond : bonds) {
-            if (bond.hasBoth(i, j)) {
-                return true;
-            }
+    public int getDegree(int atomIndex) {
+        Adjacency adj = getAdjacency();
+        if (!adj.hasAtom(atomIndex)) {
+            return 0;
         }
-        return false;
+        return adj.offsets[atomIndex + 1] - adj.offsets[atomIndex];
+    }
+    
+    public boolean isConnected(int i, int j) {
+        return getAdjacency().find(i, j) != -1;
     }
     
     public BondOrder getBondOrder(int atomIndex, int otherAtomIndex) {
-        for (Bond bond : this.bonds) {
-            if (bond.hasBoth(atomIndex, otherAtomIndex)) {
-                return bond.order;
-            }
+        Adjacency adj = getAdjacency();
+        int k = adj.find(atomIndex, otherAtomIndex);
+        if (k == -1) {
+            return BondOrder.NONE;
+        } else {
+            return adj.orders[k];
         }
-        return BondOrder.NONE;
     }
     
     public int convertBondOrderToInt(BondOrder bondOrder) {
@@ -220,11 +305,13 @@ public class Molecule {
     }
     
     public int getTotalOrder(int atomIndex) {
+        Adjacency adj = getAdjacency();
+        if (!adj.hasAtom(atomIndex)) {
+            return 0;
+        }
         int totalOrder = 0;
-        for (Bond bond : bonds) {
-            if (bond.a.index == atomIndex || bond.b.index == atomIndex) {
-                totalOrder += convertBondOrderToInt(bond.order);
-            }
+        for (int k = adj.offsets[atomIndex]; k < adj.offsets[atomIndex + 1]; k++) {
+            totalOrder += convertBondOrderToInt(adj.orders[k]);
         }
         return totalOrder;
     }
@@ -239,6 +326,7 @@ public class Molecule {
             buffer.append(a).append("|");
         }
         Collections.sort(bonds);
+        this.adjacency = null;
         for (Bond b : this.bonds) {
             buffer.append(b).append("|");
         }
@@ -252,6 +340,7 @@ public class Molecule {
 
     public void addAtom(int i, String symbol) {
         this.atoms.add(new Atom(i, symbol));
+        this.adjacency = null;
     }
     
     public void addMultipleAtoms(int count, String symbol) {
@@ -274,6 +363,7 @@ public class Molecule {
         Atom a = this.atoms.get(atomNumberA);
         Atom b = this.atoms.get(atomNumberB);
         this.bonds.add(new Bond(a, b, order));
+        this.adjacency = null;
     }
     
     public boolean identical(Molecule other) {
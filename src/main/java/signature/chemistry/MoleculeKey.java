@@ -0,0 +1,117 @@
+package signature.chemistry;
+
+import java.util.Arrays;
+
+import signature.FingerprintHasher;
+
+/**
+ * A key for caching the signature of a molecule. The hash depends only on 
+ * the sorted atom symbols and the sorted multiset of bonds (as pairs of 
+ * symbols with an order), so it does not depend on the order of the atoms 
+ * and can be made without canonizing the molecule. As different molecules 
+ * can have the same hash, the key also holds the structure itself - the 
+ * atom symbols in order and the bonds between the atom indices - and two 
+ * keys are only equal if their structures are identical.
+ * 
+ * So a key only matches a molecule with the same atoms in the same order.
+ * A renumbered copy of a molecule has the same hash but a different key, 
+ * and misses the cache - keying on a canonical form would need the very 
+ * canonization that the cache is there to skip. This suits files where the
+ * same record turns up more than once, as the copies have the same order.
+ */
+public final class MoleculeKey {
+
+    private final long hash;
+
+    private final String structure;
+
+    public MoleculeKey(long hash, String structure) {
+        this.hash = hash;
+        this.structure = structure;
+    }
+
+    /**
+     * Make the key for a molecule.
+     * 
+     * @param molecule the molecule
+     * @param signatureType a description of the kind of signature that the
+     *        key is for (such as the height), so that different kinds of
+     *        signature for the same molecule have different keys
+     * @return the key for the molecule
+     */
+    public static MoleculeKey of(Molecule molecule, String signatureType) {
+        int atomCount = molecule.getAtomCount();
+        int bondCount = molecule.getBondCount();
+        
+        String[] symbols = new String[atomCount];
+        for (int i = 0; i < atomCount; i++) {
+            symbols[i] = molecule.getSymbolFor(i);
+        }
+        String[] bondTypes = new String[bondCount];
+        String[] bonds = new String[bondCount];
+        for (int i = 0; i < bondCount; i++) {
+            int a = molecule.getFirstInBond(i);
+            int b = molecule.getSecondInBond(i);
+            int order = molecule.getBondOrderAsInt(i);
+            String symbolA = symbols[a];
+            String symbolB = symbols[b];
+            if (symbolA.compareTo(symbolB) <= 0) {
+                bondTypes[i] = symbolA + order + symbolB;
+            } else {
+                bondTypes[i] = symbolB + order + symbolA;
+            }
+            bonds[i] = Math.min(a, b) + "-" + Math.max(a, b) + ":" + order;
+        }
+        
+        StringBuilder structure = new StringBuilder();
+        structure.append(signatureType).append('|');
+        for (String symbol : symbols) {
+            structure.append(symbol).append(',');
+        }
+        structure.append('|');
+        Arrays.sort(bonds);
+        for (String bond : bonds) {
+            structure.append(bond).append(',');
+        }
+        
+        String[] sortedSymbols = symbols.clone();
+        Arrays.sort(sortedSymbols);
+        Arrays.sort(bondTypes);
+        FingerprintHasher hasher = new FingerprintHasher();
+        hasher.update(signatureType).update('|');
+        for (String symbol : sortedSymbols) {
+            hasher.update(symbol).update(',');
+        }
+        hasher.update('|');
+        for (String bondType : bondTypes) {
+            hasher.update(bondType).update(',');
+        }
+        return new MoleculeKey(hasher.finish().getLow(), structure.toString());
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    public String getStructure() {
+        return structure;
+    }
+
+    public boolean equals(Object o) {
+        if (o instanceof MoleculeKey) {
+            MoleculeKey other = (MoleculeKey) o;
+            return hash == other.hash && structure.equals(other.structure);
+        } else {
+            return false;
+        }
+    }
+
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    public String toString() {
+        return Long.toHexString(hash) + " " + structure;
+    }
+
+}
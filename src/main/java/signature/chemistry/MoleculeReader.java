@@ -7,7 +7,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -52,6 +52,18 @@ public class MoleculeReader {
         return null;
     }
     
+    /**
+     * Prints the records that cannot be read to standard error
+     */
+    static final SkippedRecordListener PRINT_SKIPPED_RECORDS = 
+        new SkippedRecordListener() {
+            public void recordSkipped(int recordIndex, Exception cause) {
+                System.err.println(
+                        "failed for block " + recordIndex + " " + cause);
+                cause.printStackTrace();
+            }
+        };
+    
 	/**
 	 * Read a list of Molecule from an InputStream, providing SDFile contents
 	 * @param stream InputStream to read from
@@ -60,36 +72,47 @@ public class MoleculeReader {
     public static List<Molecule> readSDFfromStream(InputStream stream) {
         List<Molecule> molecules = new ArrayList<Molecule>();
         try {
-            InputStreamReader ir = new InputStreamReader(stream);
-            
-            BufferedReader reader = new BufferedReader(ir);
-            String line;
-            int i = 0;
-            List<String> block = new ArrayList<String>();
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("$$$$")) {
-                    Molecule molecule;
-                    try {
-                        molecule = MoleculeReader.makeMolecule(block); 
-                        molecules.add(molecule);
-                    } catch (Exception e) {
-                        System.err.println("failed for block " + i + " " + e);
-                        e.printStackTrace();
-                    }
-                    block.clear();
-                    i++;
-                } else {
-                    block.add(line);
-                }
+            SDFReader reader = new SDFReader(stream);
+            reader.setSkippedRecordListener(PRINT_SKIPPED_RECORDS);
+            for (Molecule molecule : reader) {
+                molecules.add(molecule);
             }
-        } catch (IOException ioe) {
-            System.err.println(ioe.toString());
+        } catch (UncheckedIOException ioe) {
+            System.err.println(ioe.getCause().toString());
         } 
         return molecules;
     }
     
-    private static Molecule makeMolecule(List<String> block) throws Exception {
+    /**
+     * Read the molecules in an SDFile one at a time, rather than all at once.
+     * The reader should be closed when it is no longer needed.
+     * 
+     * @param filename path to SDFile
+     * @return a reader for the molecules in the file
+     * @throws FileNotFoundException if there is no such file
+     */
+    public static SDFReader iterateSDFFile(String filename) 
+        throws FileNotFoundException {
+        return new SDFReader(new FileInputStream(new File(filename)));
+    }
+    
+    /**
+     * Read the molecules in an SDFile one at a time from a memory-mapped 
+     * copy of the file, which is quicker for large files.
+     * 
+     * @param filename path to SDFile
+     * @return a reader for the molecules in the file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public static MappedSDFReader mapSDFFile(String filename) 
+        throws IOException {
+        return new MappedSDFReader(filename);
+    }
+    
+    static Molecule makeMolecule(List<String> block) throws Exception {
         Molecule molecule = new Molecule();
+        // the title is on the first line
+        molecule.name = block.get(0);
         // counts are on the fourth line
         String countLine = block.get(3);
         int atomCount = Integer.parseInt(countLine.substring(0, 3).trim());
@@ -122,7 +145,7 @@ public class MoleculeReader {
         return molecule;
     }
     
-    private static BondOrder convertIntToBondOrder(int o) {
+    static BondOrder convertIntToBondOrder(int o) {
         switch (o) {
             case 1: return BondOrder.SINGLE;
             case 2: return BondOrder.DOUBLE;
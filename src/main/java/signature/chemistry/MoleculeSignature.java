@@ -1,5 +1,10 @@
 package signature.chemistry;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 import signature.AbstractGraphSignature;
 import signature.AbstractVertexSignature;
 import signature.AbstractVertexSignature.InvariantType;
@@ -10,22 +15,104 @@ public class MoleculeSignature extends AbstractGraphSignature {
     
     private InvariantType invariantType;
     
+    /**
+     * If not null, canonical strings and graph signatures are looked up here
+     * before being made
+     */
+    private SignatureCache cache;
+    
     public MoleculeSignature(Molecule molecule) {
         this(molecule, InvariantType.STRING);
     }
     
     public MoleculeSignature(Molecule molecule, InvariantType invariantType) {
-        super(" + ");
+        this(molecule, invariantType, -1);
+    }
+    
+    public MoleculeSignature(Molecule molecule, int height) {
+        this(molecule, InvariantType.STRING, height);
+    }
+    
+    public MoleculeSignature(
+            Molecule molecule, InvariantType invariantType, int height) {
+        super(" + ", height);
         this.molecule = molecule;
         this.invariantType = invariantType;
     }
     
+    /**
+     * Set a cache to look up the canonical string and the graph signature 
+     * in, and to store them in once they have been made.
+     * 
+     * @param cache the cache to use, or null for none
+     */
+    public void setCache(SignatureCache cache) {
+        this.cache = cache;
+    }
+    
+    /**
+     * Make the key for a kind of signature of the molecule. The key holds 
+     * the height and invariant type, and any settings that are not the 
+     * default, so that signatures made in different ways are not mixed up.
+     * 
+     * @param kind the kind of signature, such as "canonical"
+     * @return the key for the cache
+     */
+    private MoleculeKey cacheKey(String kind) {
+        StringBuilder signatureType = new StringBuilder(kind);
+        signatureType.append(' ').append(getHeight());
+        signatureType.append(' ').append(invariantType);
+        if (!isPrefilter()) {
+            signatureType.append(" unfiltered");
+        }
+        if (isBoundedCanonicalSearch()) {
+            signatureType.append(" bounded");
+        }
+        return MoleculeKey.of(molecule, signatureType.toString());
+    }
+    
+    /**
+     * Get the canonical string, from the cache if it has been made for the
+     * same structure before.
+     */
+    @Override
+    public String toCanonicalString() {
+        if (cache == null) {
+            return super.toCanonicalString();
+        }
+        MoleculeKey key = cacheKey("canonical");
+        String canonicalString = cache.get(key);
+        if (canonicalString == null) {
+            canonicalString = super.toCanonicalString();
+            cache.put(key, canonicalString);
+        }
+        return canonicalString;
+    }
+    
+    /**
+     * Get the graph signature, from the cache if it has been made for the 
+     * same structure before.
+     */
+    @Override
+    public String getGraphSignature() {
+        if (cache == null) {
+            return super.getGraphSignature();
+        }
+        MoleculeKey key = cacheKey("graph");
+        String graphSignature = cache.get(key);
+        if (graphSignature == null) {
+            graphSignature = super.getGraphSignature();
+            cache.put(key, graphSignature);
+        }
+        return graphSignature;
+    }
+    
     public static boolean isCanonicallyLabelled(Molecule molecule) {
         return new MoleculeSignature(molecule).isCanonicallyLabelled();
     }
 
     public String getMolecularSignature() {
-        return super.getGraphSignature();
+        return getGraphSignature();
     }
 
     @Override
@@ -33,19 +120,98 @@ public class MoleculeSignature extends AbstractGraphSignature {
         return this.molecule.getAtomCount();
     }
 
+    @Override
+    protected String getVertexLabel(int vertexIndex) {
+        return this.molecule.getSymbolFor(vertexIndex);
+    }
+
+    @Override
+    protected int getVertexDegree(int vertexIndex) {
+        return this.molecule.getDegree(vertexIndex);
+    }
+
     @Override
     public String signatureStringForVertex(int vertexIndex) {
-        int height = super.getHeight();
-        AtomSignature atomSignature = 
-            new AtomSignature(molecule, vertexIndex, height, invariantType);
-        return atomSignature.toCanonicalString();
+        return signatureStringForVertex(vertexIndex, super.getHeight());
     }
 
+    /**
+     * Get the signature string for an atom with a particular height. The 
+     * string is remembered, so asking for it again is just a lookup.
+     */
     @Override
     public String signatureStringForVertex(int vertexIndex, int height) {
-        AtomSignature atomSignature = 
-            new AtomSignature(molecule, vertexIndex, height, invariantType);
-        return atomSignature.toCanonicalString();
+        String signatureString = recallSignatureString(vertexIndex, height);
+        if (signatureString == null) {
+            AtomSignature atomSignature = 
+                new AtomSignature(molecule, vertexIndex, height, invariantType);
+            signatureString = canonicalStringFor(atomSignature);
+            rememberSignatureString(vertexIndex, height, signatureString);
+        }
+        return signatureString;
+    }
+
+    /**
+     * Count the atom signatures of every atom at each height from 0 up to a 
+     * maximum height - for example, as descriptors. Strings that have been 
+     * remembered are looked up first; for the rest, the graph is visited once
+     * for each atom, to build its tallest missing signature, and the missing
+     * signatures with smaller heights are copied from the first layers of 
+     * that. The strings made are also remembered, as for 
+     * {@link #signatureStringForVertex(int, int)}.
+     * 
+     * @param maxHeight the greatest height to count signatures for
+     * @return for each height, a map of the signature strings (in order) to 
+     *         the number of atoms with that signature
+     */
+    public List<Map<String, Integer>> getAtomSignatureCounts(int maxHeight) {
+        List<Map<String, Integer>> counts = 
+            new ArrayList<Map<String, Integer>>();
+        for (int height = 0; height <= maxHeight; height++) {
+            counts.add(new TreeMap<String, Integer>());
+        }
+        String[] signatureStrings = new String[maxHeight + 1];
+        AtomSignature[] signatures = new AtomSignature[maxHeight + 1];
+        for (int atomIndex = 0; atomIndex < getVertexCount(); atomIndex++) {
+            // only the heights that are not remembered are made
+            int tallestMissing = -1;
+            for (int height = 0; height <= maxHeight; height++) {
+                signatureStrings[height] = 
+                    recallSignatureString(atomIndex, height);
+                if (signatureStrings[height] == null) {
+                    tallestMissing = height;
+                }
+            }
+            if (tallestMissing != -1) {
+                // the shorter signatures have to be copied before canonizing
+                signatures[tallestMissing] = new AtomSignature(
+                        molecule, atomIndex, tallestMissing, invariantType);
+                for (int height = 0; height < tallestMissing; height++) {
+                    if (signatureStrings[height] == null) {
+                        signatures[height] = new AtomSignature(
+                            signatures[tallestMissing], height, invariantType);
+                    }
+                }
+                for (int height = 0; height <= tallestMissing; height++) {
+                    if (signatureStrings[height] == null) {
+                        signatureStrings[height] = 
+                            canonicalStringFor(signatures[height]);
+                        rememberSignatureString(
+                                atomIndex, height, signatureStrings[height]);
+                    }
+                }
+            }
+            for (int height = 0; height <= maxHeight; height++) {
+                Map<String, Integer> heightCounts = counts.get(height);
+                Integer count = heightCounts.get(signatureStrings[height]);
+                if (count == null) {
+                    heightCounts.put(signatureStrings[height], 1);
+                } else {
+                    heightCounts.put(signatureStrings[height], count + 1);
+                }
+            }
+        }
+        return counts;
     }
 
     @Override
@@ -0,0 +1,175 @@
+package signature.chemistry;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the molecules in an SDFile one record at a time, so that files of any
+ * size can be processed without holding all of the molecules in memory. Only
+ * the lines of the current record are kept, in a list that is reused for 
+ * every record. Records that cannot be made into a molecule are skipped, and
+ * counted, and can be reported to a {@link SkippedRecordListener}.
+ */
+public class SDFReader implements Iterator<Molecule>, Iterable<Molecule>, 
+                                  Closeable {
+
+    private final BufferedReader reader;
+
+    private final List<String> block;
+
+    /**
+     * The next molecule to return, if it has been read already
+     */
+    private Molecule next;
+
+    /**
+     * The index of the current record in the file
+     */
+    private int recordIndex;
+
+    private boolean finished;
+
+    private int skippedCount;
+
+    private SkippedRecordListener listener;
+
+    public SDFReader(InputStream stream) {
+        this(new InputStreamReader(stream));
+    }
+
+    public SDFReader(Reader reader) {
+        if (reader instanceof BufferedReader) {
+            this.reader = (BufferedReader) reader;
+        } else {
+            this.reader = new BufferedReader(reader);
+        }
+        this.block = new ArrayList<String>();
+        this.recordIndex = 0;
+        this.finished = false;
+    }
+
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    public Molecule next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Molecule molecule = next;
+        next = null;
+        return molecule;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return this reader, so that it can be used in a for-each loop - which
+     *         can only be done once
+     */
+    public Iterator<Molecule> iterator() {
+        return this;
+    }
+
+    /**
+     * Get the molecules as a sequential stream, which closes this reader when
+     * it is closed.
+     * 
+     * @return a stream of the molecules in the file
+     */
+    public Stream<Molecule> stream() {
+        Spliterator<Molecule> spliterator = 
+            Spliterators.spliteratorUnknownSize(this, 
+                    Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            public void run() {
+                try {
+                    close();
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the number of records read so far, including any skipped
+     */
+    public int getRecordCount() {
+        return recordIndex;
+    }
+
+    /**
+     * @return the number of records skipped so far, because they could not be
+     *         made into a molecule
+     */
+    public int getSkippedRecordCount() {
+        return skippedCount;
+    }
+
+    /**
+     * Set a listener to tell about each record that is skipped.
+     * 
+     * @param listener the listener, or null for none
+     */
+    public void setSkippedRecordListener(SkippedRecordListener listener) {
+        this.listener = listener;
+    }
+
+    public void close() throws IOException {
+        finished = true;
+        block.clear();
+        reader.close();
+    }
+
+    private Molecule readNext() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("$$$$")) {
+                    Molecule molecule = null;
+                    try {
+                        molecule = MoleculeReader.makeMolecule(block);
+                    } catch (Exception e) {
+                        skippedCount++;
+                        if (listener != null) {
+                            listener.recordSkipped(recordIndex, e);
+                        }
+                    }
+                    block.clear();
+                    recordIndex++;
+                    if (molecule != null) {
+                        return molecule;
+                    }
+                } else {
+                    block.add(line);
+                }
+            }
+            finished = true;
+            block.clear();
+            return null;
+        } catch (IOException ioe) {
+            finished = true;
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+}
@@ -1,27 +1,266 @@
 package signature.chemistry;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import signature.BudgetExceededException;
+import signature.SearchBudget;
+
+/**
+ * Makes the graph signatures of the molecules in an SDFile. The molecules are
+ * read on the calling thread and signed by a pool of worker threads, and the
+ * results are written in the same order as the molecules in the file. Only a
+ * few molecules per thread are read ahead of the one being written, so the
+ * reading waits for the signing, and memory use does not grow with the file.
+ * 
+ * Each result is a line with the number of the molecule in the file 
+ * (counting from 1), its title from the first line of its record, the 
+ * signature and the time it took in milliseconds, separated by tabs. A 
+ * molecule that fails, or takes longer than the timeout, has ERROR or 
+ * TIMEOUT in place of the signature. The timeout is also set as the time
+ * budget of the molecule signature, so all of its atom signature searches 
+ * stop at the same deadline - as they do if the molecule is cancelled.
+ * 
+ * If a cache is set, the signatures are looked up in it first, so that a 
+ * structure that has been signed before is not signed again.
+ */
 public class SDFToSignatures {
 
     /**
-     * @param args
+     * The number of molecules read ahead for each thread
      */
-    public static void main(String[] args) {
-        if (args.length < 1) {
-            System.out.println("Usage : SDFToSignatures <filename>");
+    private static final int MOLECULES_PER_THREAD = 4;
+
+    private final int threadCount;
+
+    private final int height;
+
+    private final long timeoutMillis;
+
+    /**
+     * If not null, signatures are looked up here before being made
+     */
+    private SignatureCache cache;
+
+    /**
+     * @param threadCount the number of threads to make signatures with
+     * @param height the height of the signatures, or -1 for the maximum
+     * @param timeoutMillis the longest time to spend on one molecule, or 0 
+     *        for no limit
+     */
+    public SDFToSignatures(int threadCount, int height, long timeoutMillis) {
+        this.threadCount = threadCount;
+        this.height = height;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Set a cache to look up the signatures in, and to store them in once 
+     * they have been made. It is used by all of the threads at once.
+     * 
+     * @param cache the cache to use, or null for none
+     */
+    public void setCache(SignatureCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * A molecule to sign, that records when it was started and finished.
+     */
+    private class SignatureTask implements Callable<String> {
+
+        public final int moleculeNumber;
+
+        private final Molecule molecule;
+
+        public volatile long startTime = -1;
+
+        public volatile long endTime = -1;
+
+        public Future<String> future;
+
+        public SignatureTask(int moleculeNumber, Molecule molecule) {
+            this.moleculeNumber = moleculeNumber;
+            this.molecule = molecule;
+        }
+
+        public String call() {
+            startTime = System.nanoTime();
+            try {
+                MoleculeSignature signature = 
+                    new MoleculeSignature(molecule, height);
+                signature.setCache(cache);
+                if (timeoutMillis > 0) {
+                    // one deadline for the whole molecule, so that a runaway
+                    // search stops rather than keeping a worker busy after
+                    // the molecule has timed out
+                    signature.setBudget(new SearchBudget(timeoutMillis, 0, 0));
+                }
+                return signature.getGraphSignature();
+            } finally {
+                endTime = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Sign the molecules, and write the results in the same order.
+     * 
+     * @param molecules the molecules to sign
+     * @param out the stream to write the results to
+     * @return the number of molecules signed, including any that failed
+     */
+    public int run(Iterator<Molecule> molecules, PrintStream out) {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Queue<SignatureTask> inFlight = new ArrayDeque<SignatureTask>();
+        int maxInFlight = threadCount * MOLECULES_PER_THREAD;
+        int moleculeNumber = 0;
+        try {
+            while (molecules.hasNext()) {
+                if (inFlight.size() == maxInFlight) {
+                    write(inFlight.remove(), out);
+                }
+                moleculeNumber++;
+                SignatureTask task = 
+                    new SignatureTask(moleculeNumber, molecules.next());
+                task.future = executor.submit(task);
+                inFlight.add(task);
+            }
+            while (!inFlight.isEmpty()) {
+                write(inFlight.remove(), out);
+            }
+        } finally {
+            for (SignatureTask task : inFlight) {
+                task.future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+        return moleculeNumber;
+    }
+
+    /**
+     * Wait for a task to finish, or to run out of time, and write its result.
+     */
+    private void write(SignatureTask task, PrintStream out) {
+        String result;
+        try {
+            result = await(task);
+        } catch (TimeoutException te) {
+            task.future.cancel(true);
+            result = "TIMEOUT";
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof BudgetExceededException) {
+                result = "TIMEOUT";
+            } else {
+                result = "ERROR " + ee.getCause();
+            }
+        } catch (CancellationException ce) {
+            result = "TIMEOUT";
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while making signatures", ie);
+        }
+        long end = (task.endTime == -1) ? System.nanoTime() : task.endTime;
+        long millis = (task.startTime == -1) ? 
+                0 : TimeUnit.NANOSECONDS.toMillis(end - task.startTime);
+        String title = (task.molecule.name == null) ? "" : task.molecule.name;
+        out.println(task.moleculeNumber + "\t" + title + "\t" 
+                + result + "\t" + millis);
+    }
+
+    /**
+     * Wait for the result of a task, timing it from when it started - not 
+     * from when it was submitted - so that waiting in the queue does not 
+     * count against it.
+     */
+    private String await(SignatureTask task) throws InterruptedException,
+            ExecutionException, TimeoutException {
+        if (timeoutMillis <= 0) {
+            return task.future.get();
+        }
+        long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            long startTime = task.startTime;
+            long remaining;
+            if (startTime == -1) {
+                remaining = timeout;
+            } else {
+                remaining = startTime + timeout - System.nanoTime();
+            }
+            try {
+                return task.future.get(remaining, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException te) {
+                if (task.startTime != -1 && 
+                        System.nanoTime() - task.startTime >= timeout) {
+                    throw te;
+                }
+                // it was still waiting to start, so wait again
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage : SDFToSignatures [-threads n] " +
+                "[-height h] [-timeout milliseconds] [-cache cachefile] " +
+                "<filename>");
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        int height = -1;
+        long timeoutMillis = 0;
+        String cacheFilename = null;
+        String filename = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-threads")) {
+                    threadCount = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-height")) {
+                    height = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-timeout")) {
+                    timeoutMillis = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-cache")) {
+                    cacheFilename = args[++i];
+                } else {
+                    filename = args[i];
+                }
+            }
+        } catch (RuntimeException e) {
+            filename = null;
+        }
+        if (filename == null || threadCount < 1) {
+            printUsage();
+            return;
         }
-        String filename = args[0];
-        int molCount = 0;
-        for (Molecule molecule : MoleculeReader.readSDFFile(filename)) {
-        	try {
-        		molCount++;
-        		System.out.println("Current molecule: " + molCount);
-        		MoleculeSignature signature = new MoleculeSignature(molecule);
-        		// get graph signature
-        		System.out.println(signature.getGraphSignature());
-        	}
-        	catch (Exception e) {}
+        MappedSDFReader reader = MoleculeReader.mapSDFFile(filename);
+        reader.setSkippedRecordListener(MoleculeReader.PRINT_SKIPPED_RECORDS);
+        MappedFileSignatureCache cache = null;
+        try {
+            SDFToSignatures sdfToSignatures = 
+                new SDFToSignatures(threadCount, height, timeoutMillis);
+            if (cacheFilename != null) {
+                cache = new MappedFileSignatureCache(cacheFilename);
+                sdfToSignatures.setCache(cache);
+            }
+            sdfToSignatures.run(reader, System.out);
+        } finally {
+            reader.close();
+            if (cache != null) {
+                cache.close();
+            }
         }
-        //System.out.println("Total number of molecules: " + molCount);
     }
 
 }
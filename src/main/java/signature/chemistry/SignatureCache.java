@@ -0,0 +1,24 @@
+package signature.chemistry;
+
+/**
+ * A store of molecule signatures, so that a signature only needs to be made
+ * once for each structure. Implementations must be safe to use from several
+ * threads at once.
+ */
+public interface SignatureCache {
+
+    /**
+     * @param key the key for a molecule
+     * @return the signature stored for the key, or null if there is none
+     */
+    public String get(MoleculeKey key);
+
+    /**
+     * Store a signature, if there is none for the key already.
+     * 
+     * @param key the key for a molecule
+     * @param signature the signature of the molecule
+     */
+    public void put(MoleculeKey key, String signature);
+
+}
@@ -0,0 +1,15 @@
+package signature.chemistry;
+
+/**
+ * Told about each record of an SDFile that a reader skips, because it could
+ * not be made into a molecule.
+ */
+public interface SkippedRecordListener {
+
+    /**
+     * @param recordIndex the index of the record in the file, from 0
+     * @param cause the reason the record could not be read
+     */
+    public void recordSkipped(int recordIndex, Exception cause);
+
+}
@@ -1,6 +1,7 @@
 package signature.edgecolored;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -14,9 +15,9 @@ public class EdgeColoredGraph {
     
     public class Edge implements Comparable<Edge> {
         
-        public int a;
+        public final int a;
         
-        public int b;
+        public final int b;
         
         public String edgeLabel;
         
@@ -49,12 +50,72 @@ public class EdgeColoredGraph {
 
     }
     
-    public List<Edge> edges;
+    /**
+     * A frozen, compressed-sparse-row index of the edges : the neighbours of
+     * vertex i are at neighbours[offsets[i]] up to neighbours[offsets[i + 1]],
+     * in the order of the edge list, with the edge itself at the same position
+     * in incidentEdges. The same range of sortedNeighbours holds the 
+     * neighbours in ascending order, for binary search.
+     */
+    private static class Adjacency {
+        
+        final int[] offsets;
+        
+        final int[] neighbours;
+        
+        final Edge[] incidentEdges;
+        
+        final int[] sortedNeighbours;
+        
+        Adjacency(List<Edge> edges, int vertexCount) {
+            offsets = new int[vertexCount + 1];
+            for (Edge e : edges) {
+                offsets[e.a + 1]++;
+                if (e.a != e.b) {
+                    offsets[e.b + 1]++;
+                }
+            }
+            for (int i = 0; i < vertexCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            neighbours = new int[offsets[vertexCount]];
+            incidentEdges = new Edge[offsets[vertexCount]];
+            int[] fill = new int[vertexCount];
+            for (Edge e : edges) {
+                int slot = offsets[e.a] + fill[e.a]++;
+                neighbours[slot] = e.b;
+                incidentEdges[slot] = e;
+                if (e.a != e.b) {
+                    slot = offsets[e.b] + fill[e.b]++;
+                    neighbours[slot] = e.a;
+                    incidentEdges[slot] = e;
+                }
+            }
+            sortedNeighbours = neighbours.clone();
+            for (int i = 0; i < vertexCount; i++) {
+                Arrays.sort(sortedNeighbours, offsets[i], offsets[i + 1]);
+            }
+        }
+        
+        boolean hasVertex(int vertexIndex) {
+            return vertexIndex >= 0 && vertexIndex < offsets.length - 1;
+        }
+    }
     
-    public int maxVertexIndex;
+    /**
+     * Only changed through makeEdge, so that the adjacency is dropped
+     */
+    private final List<Edge> edges;
+    
+    private int maxVertexIndex;
     
     public String name;
     
+    /**
+     * Built on the first query, and dropped when an edge is made
+     */
+    private Adjacency adjacency;
+    
     public EdgeColoredGraph() {
         this.edges = new ArrayList<Edge>();
     }
@@ -67,9 +128,11 @@ public class EdgeColoredGraph {
     }
     
     public Edge getEdge(int a, int b) {
-        for (Edge edge : edges) {
-            if ((edge.a == a && edge.b == b) || (edge.a == b && edge.b == a)) {
-                return edge;
+        Adjacency adj = getAdjacency();
+        if (!adj.hasVertex(a)) return null;
+        for (int k = adj.offsets[a]; k < adj.offsets[a + 1]; k++) {
+            if (adj.neighbours[k] == b) {
+                return adj.incidentEdges[k];
             }
         }
         return null;
@@ -79,53 +142,52 @@ public class EdgeColoredGraph {
         if (a > maxVertexIndex) maxVertexIndex = a;
         if (b > maxVertexIndex) maxVertexIndex = b;
         this.edges.add(new Edge(a, b, edgeLabel));
+        this.adjacency = null;
+    }
+    
+    /**
+     * @return a read-only view of the edges
+     */
+    public List<Edge> getEdges() {
+        return Collections.unmodifiableList(edges);
     }
     
     public int getVertexCount() {
         return this.maxVertexIndex + 1;
     }
     
-    public boolean isConnected(int i, int j) {
-        for (Edge e : edges) {
-            if ((e.a == i && e.b == j) || (e.b == i && e.a == j)) {
-                return true;
-            }
+    private Adjacency getAdjacency() {
+        Adjacency current = this.adjacency;
+        if (current == null) {
+            current = new Adjacency(edges, getVertexCount());
+            this.adjacency = current;
         }
-        return false;
+        return current;
+    }
+    
+    public boolean isConnected(int i, int j) {
+        Adjacency adj = getAdjacency();
+        if (!adj.hasVertex(i)) return false;
+        return Arrays.binarySearch(
+                adj.sortedNeighbours, adj.offsets[i], adj.offsets[i + 1], j) >= 0;
     }
     
     public int[] getConnected(int vertexIndex) {
-        List<Integer> connected = new ArrayList<Integer>();
-        for (Edge edge : this.edges) {
-            if (edge.a == vertexIndex) {
-                connected.add(edge.b);
-            } else if (edge.b == vertexIndex) {
-                connected.add(edge.a);
-            } else {
-                continue;
-            }
-        }
-        int[] connectedArray = new int[connected.size()];
-        int i = 0;
-        for (int connectedVertexIndex : connected) {
-            connectedArray[i] = connectedVertexIndex;
-            i++;
-        }
-        return connectedArray;
+        Adjacency adj = getAdjacency();
+        if (!adj.hasVertex(vertexIndex)) return new int[0];
+        return Arrays.copyOfRange(adj.neighbours, 
+                adj.offsets[vertexIndex], adj.offsets[vertexIndex + 1]);
     }
     
     public int degree(int vertexIndex) {
-        int degreeCount = 0;
-        for (Edge e : edges) {
-            if (e.a == vertexIndex || e.b == vertexIndex) {
-                degreeCount++;
-            }
-        }
-        return degreeCount;
+        Adjacency adj = getAdjacency();
+        if (!adj.hasVertex(vertexIndex)) return 0;
+        return adj.offsets[vertexIndex + 1] - adj.offsets[vertexIndex];
     }
 
     public String toString() {
         Collections.sort(edges);
+        this.adjacency = null;
         return edges.toString();
     }
     
@@ -27,6 +27,11 @@ public class EdgeColoredGraphSignature extends AbstractGraphSignature {
         return this.graph.getVertexCount();
     }
 
+    @Override
+    protected int getVertexDegree(int vertexIndex) {
+        return this.graph.degree(vertexIndex);
+    }
+
     @Override
     public String signatureStringForVertex(int vertexIndex) {
         EdgeColoredVertexSignature vertexSignature;
@@ -38,14 +43,14 @@ public class EdgeColoredGraphSignature extends AbstractGraphSignature {
             vertexSignature = 
                 new EdgeColoredVertexSignature(vertexIndex, height, this.graph, this.colorMap);
         }
-        return vertexSignature.toCanonicalString();
+        return canonicalStringFor(vertexSignature);
     }
 
     @Override
     public String signatureStringForVertex(int vertexIndex, int height) {
         EdgeColoredVertexSignature vertexSignature  = 
             new EdgeColoredVertexSignature(vertexIndex, height, this.graph, this.colorMap);
-        return vertexSignature.toCanonicalString();
+        return canonicalStringFor(vertexSignature);
     }
 
     public String toCanonicalString() {
@@ -1,6 +1,7 @@
 package signature.simple;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -13,8 +14,8 @@ import java.util.List;
 public class SimpleGraph {
     
     public class Edge implements Comparable<Edge> {
-        public int a;
-        public int b;
+        public final int a;
+        public final int b;
         
         public Edge(int a, int b) {
             if (a < b) {
@@ -44,12 +45,64 @@ public class SimpleGraph {
 
     }
     
-    public List<Edge> edges;
+    /**
+     * A frozen, compressed-sparse-row index of the edges : the neighbours of
+     * vertex i are at neighbours[offsets[i]] up to neighbours[offsets[i + 1]],
+     * in the order of the edge list. The same range of sortedNeighbours holds
+     * them in ascending order, for binary search.
+     */
+    private static class Adjacency {
+        
+        final int[] offsets;
+        
+        final int[] neighbours;
+        
+        final int[] sortedNeighbours;
+        
+        Adjacency(List<Edge> edges, int vertexCount) {
+            offsets = new int[vertexCount + 1];
+            for (Edge e : edges) {
+                offsets[e.a + 1]++;
+                if (e.a != e.b) {
+                    offsets[e.b + 1]++;
+                }
+            }
+            for (int i = 0; i < vertexCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            neighbours = new int[offsets[vertexCount]];
+            int[] fill = new int[vertexCount];
+            for (Edge e : edges) {
+                neighbours[offsets[e.a] + fill[e.a]++] = e.b;
+                if (e.a != e.b) {
+                    neighbours[offsets[e.b] + fill[e.b]++] = e.a;
+                }
+            }
+            sortedNeighbours = neighbours.clone();
+            for (int i = 0; i < vertexCount; i++) {
+                Arrays.sort(sortedNeighbours, offsets[i], offsets[i + 1]);
+            }
+        }
+        
+        boolean hasVertex(int vertexIndex) {
+            return vertexIndex >= 0 && vertexIndex < offsets.length - 1;
+        }
+    }
+    
+    /**
+     * Only changed through makeEdge, so that the adjacency is dropped
+     */
+    private final List<Edge> edges;
     
-    public int maxVertexIndex;
+    private int maxVertexIndex;
     
     public String name;
     
+    /**
+     * Built on the first query, and dropped when an edge is made
+     */
+    private Adjacency adjacency;
+    
     public SimpleGraph() {
         this.edges = new ArrayList<Edge>();
     }
@@ -75,6 +128,7 @@ public class SimpleGraph {
         if (a > maxVertexIndex) maxVertexIndex = a;
         if (b > maxVertexIndex) maxVertexIndex = b;
         this.edges.add(new Edge(a, b));
+        this.adjacency = null;
     }
     
     public void makeEdges(int a, int... bs) {
@@ -83,51 +137,49 @@ public class SimpleGraph {
     	}
     }
     
+    /**
+     * @return a read-only view of the edges
+     */
+    public List<Edge> getEdges() {
+        return Collections.unmodifiableList(edges);
+    }
+    
     public int getVertexCount() {
         return this.maxVertexIndex + 1;
     }
     
-    public boolean isConnected(int i, int j) {
-        for (Edge e : edges) {
-            if ((e.a == i && e.b == j) || (e.b == i && e.a == j)) {
-                return true;
-            }
+    private Adjacency getAdjacency() {
+        Adjacency current = this.adjacency;
+        if (current == null) {
+            current = new Adjacency(edges, getVertexCount());
+            this.adjacency = current;
         }
-        return false;
+        return current;
+    }
+    
+    public boolean isConnected(int i, int j) {
+        Adjacency adj = getAdjacency();
+        if (!adj.hasVertex(i)) return false;
+        return Arrays.binarySearch(
+                adj.sortedNeighbours, adj.offsets[i], adj.offsets[i + 1], j) >= 0;
     }
     
     public int[] getConnected(int vertexIndex) {
-        List<Integer> connected = new ArrayList<Integer>();
-        for (Edge edge : this.edges) {
-            if (edge.a == vertexIndex) {
-                connected.add(edge.b);
-            } else if (edge.b == vertexIndex) {
-                connected.add(edge.a);
-            } else {
-                continue;
-            }
-        }
-        int[] connectedArray = new int[connected.size()];
-        int i = 0;
-        for (int connectedVertexIndex : connected) {
-            connectedArray[i] = connectedVertexIndex;
-            i++;
-        }
-        return connectedArray;
+        Adjacency adj = getAdjacency();
+        if (!adj.hasVertex(vertexIndex)) return new int[0];
+        return Arrays.copyOfRange(adj.neighbours, 
+                adj.offsets[vertexIndex], adj.offsets[vertexIndex + 1]);
     }
     
     public int degree(int vertexIndex) {
-        int degreeCount = 0;
-        for (Edge e : edges) {
-            if (e.a == vertexIndex || e.b == vertexIndex) {
-                degreeCount++;
-            }
-        }
-        return degreeCount;
+        Adjacency adj = getAdjacency();
+        if (!adj.hasVertex(vertexIndex)) return 0;
+        return adj.offsets[vertexIndex + 1] - adj.offsets[vertexIndex];
     }
 
     public String toString() {
         Collections.sort(edges);
+        this.adjacency = null;
         return edges.toString();
     }
     
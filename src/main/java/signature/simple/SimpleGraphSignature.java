@@ -22,6 +22,11 @@ public class SimpleGraphSignature extends AbstractGraphSignature {
         return this.graph.getVertexCount();
     }
 
+    @Override
+    protected int getVertexDegree(int vertexIndex) {
+        return this.graph.degree(vertexIndex);
+    }
+
     @Override
     public String signatureStringForVertex(int vertexIndex) {
         SimpleVertexSignature vertexSignature;
@@ -33,14 +38,14 @@ public class SimpleGraphSignature extends AbstractGraphSignature {
             vertexSignature = 
                 new SimpleVertexSignature(vertexIndex, height, this.graph);
         }
-        return vertexSignature.toCanonicalString();
+        return canonicalStringFor(vertexSignature);
     }
 
     @Override
     public String signatureStringForVertex(int vertexIndex, int height) {
         SimpleVertexSignature vertexSignature  = 
             new SimpleVertexSignature(vertexIndex, height, this.graph);
-        return vertexSignature.toCanonicalString();
+        return canonicalStringFor(vertexSignature);
     }
 
     public String toCanonicalString() {
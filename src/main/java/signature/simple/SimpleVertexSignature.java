@@ -1,6 +1,7 @@
 package signature.simple;
 
 import signature.AbstractVertexSignature;
+import signature.DAG;
 
 public class SimpleVertexSignature extends AbstractVertexSignature {
     
@@ -12,7 +13,12 @@ public class SimpleVertexSignature extends AbstractVertexSignature {
     
     public SimpleVertexSignature(
             int rootVertexIndex, int height, SimpleGraph graph) {
-        super();
+        this(rootVertexIndex, height, graph, DAG.RankingMethod.SORT);
+    }
+    
+    public SimpleVertexSignature(int rootVertexIndex, int height, 
+            SimpleGraph graph, DAG.RankingMethod rankingMethod) {
+        super(InvariantType.STRING, rankingMethod);
         this.graph = graph;
         if (height == -1) {
             super.createMaximumHeight(rootVertexIndex, graph.getVertexCount());
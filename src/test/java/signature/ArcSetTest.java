@@ -0,0 +1,51 @@
+package signature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArcSetTest {
+
+    @Test
+    public void addIsUndirected() {
+        ArcSet arcs = new ArcSet();
+        Assert.assertTrue(arcs.add(1, 2));
+        Assert.assertFalse(arcs.add(2, 1));
+        Assert.assertTrue(arcs.contains(2, 1));
+        Assert.assertFalse(arcs.contains(1, 3));
+        Assert.assertEquals(1, arcs.size());
+    }
+
+    @Test
+    public void growKeepsArcs() {
+        ArcSet arcs = new ArcSet(2);
+        for (int i = 0; i < 1000; i++) {
+            arcs.add(i, i + 1);
+        }
+        Assert.assertEquals(1000, arcs.size());
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(arcs.contains(i + 1, i));
+        }
+        Assert.assertFalse(arcs.contains(0, 2));
+    }
+
+    @Test
+    public void addAll() {
+        ArcSet a = new ArcSet();
+        a.add(0, 1);
+        ArcSet b = new ArcSet();
+        b.add(1, 0);
+        b.add(1, 2);
+        a.addAll(b);
+        Assert.assertEquals(2, a.size());
+        Assert.assertTrue(a.contains(2, 1));
+    }
+
+    @Test
+    public void arcHashCodeMatchesEquals() {
+        DAG dag = new DAG(0, 3);
+        Assert.assertEquals(dag.new Arc(1, 2), dag.new Arc(2, 1));
+        Assert.assertEquals(
+                dag.new Arc(1, 2).hashCode(), dag.new Arc(2, 1).hashCode());
+    }
+
+}
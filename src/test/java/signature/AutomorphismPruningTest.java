@@ -0,0 +1,71 @@
+package signature;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import signature.simple.SimpleGraph;
+import signature.simple.SimpleGraphFactory;
+import signature.simple.SimpleVertexSignature;
+
+public class AutomorphismPruningTest {
+
+    public void assertIsAutomorphism(SimpleGraph graph, int[] permutation) {
+        int n = graph.getVertexCount();
+        boolean[] isImage = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Assert.assertFalse(isImage[permutation[i]]);
+            isImage[permutation[i]] = true;
+        }
+        for (SimpleGraph.Edge edge : graph.getEdges()) {
+            Assert.assertTrue(graph.isConnected(
+                    permutation[edge.a], permutation[edge.b]));
+        }
+    }
+
+    public void assertSameSignatures(SimpleGraph graph) {
+        int n = graph.getVertexCount();
+        for (int i = 0; i < n; i++) {
+            SimpleVertexSignature full = new SimpleVertexSignature(i, graph);
+            full.setAutomorphismPruning(false);
+            SimpleVertexSignature pruned = new SimpleVertexSignature(i, graph);
+            pruned.setAutomorphismPruning(true);
+            Assert.assertEquals(
+                    full.toCanonicalString(), pruned.toCanonicalString());
+            Assert.assertTrue(
+                    pruned.TMP_COLORING_COUNT <= full.TMP_COLORING_COUNT);
+            for (int[] automorphism : pruned.getAutomorphisms(n)) {
+                Assert.assertEquals(i, automorphism[i]);
+                assertIsAutomorphism(graph, automorphism);
+            }
+            Assert.assertArrayEquals(
+                    full.getCanonicalLabelling(n),
+                    pruned.getCanonicalLabelling(n));
+        }
+    }
+
+    @Test
+    public void sameSignaturesWithAutomorphismPruning() {
+        assertSameSignatures(SimpleGraphFactory.make4Cube());
+        assertSameSignatures(SimpleGraphFactory.makePappusGraph());
+        assertSameSignatures(SimpleGraphFactory.makeSandwich(6));
+        assertSameSignatures(SimpleGraphFactory.makePetersensGraph());
+        assertSameSignatures(SimpleGraphFactory.makeAdamantane());
+    }
+
+    @Test
+    public void skipsEquivalentBranches() {
+        SimpleGraph cube = SimpleGraphFactory.make4Cube();
+        SimpleVertexSignature full = new SimpleVertexSignature(0, cube);
+        full.setAutomorphismPruning(false);
+        full.toCanonicalString();
+        SimpleVertexSignature pruned = new SimpleVertexSignature(0, cube);
+        pruned.toCanonicalString();
+        List<int[]> automorphisms = pruned.getAutomorphisms(16);
+        Assert.assertFalse(automorphisms.isEmpty());
+        Assert.assertTrue(
+                pruned.TMP_COLORING_COUNT < full.TMP_COLORING_COUNT);
+    }
+
+}
@@ -0,0 +1,130 @@
+package signature;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import signature.chemistry.Molecule;
+import signature.chemistry.MoleculeSignature;
+import signature.simple.SimpleGraph;
+import signature.simple.SimpleGraphFactory;
+import signature.simple.SimpleGraphSignature;
+
+public class CompactSignatureTest {
+
+    public void assertRoundTrip(String signatureString) {
+        CompactSignature compact = CompactSignature.encode(signatureString);
+        Assert.assertEquals(signatureString, compact.toString());
+        Assert.assertEquals(compact, CompactSignature.encode(signatureString));
+        Assert.assertEquals(0, 
+                compact.compareTo(CompactSignature.encode(signatureString)));
+    }
+
+    @Test
+    public void roundTripTest() {
+        assertRoundTrip("");
+        assertRoundTrip("[C]");
+        assertRoundTrip("[C]([C,1]=[O]#[N,12]([C,1]))");
+        assertRoundTrip("[.]([.,300]([.,300])[.])");
+        assertRoundTrip("[C,01]");
+        assertRoundTrip("[C,]");
+        assertRoundTrip("not a signature");
+        assertRoundTrip("[C]([O");
+        assertRoundTrip("[\u00c5]([\u4e2d,1]=[\ud83d\ude00])");
+    }
+
+    @Test
+    public void orderIsTheSameAsStrings() {
+        String[] strings = { "", "[C]", "[C](", "[C]([C])", "[C]([O])", 
+                "[Cl]", "[C,1]", "[C,10]", "[C,9]", "[.]", "[\u00c5]", 
+                "[\u4e2d]", "[\uffff]", "[\ud83d\ude00]", "[\u007f]", "[" };
+        List<String> sortedStrings = new ArrayList<String>();
+        List<CompactSignature> sortedCompact = new ArrayList<CompactSignature>();
+        for (String s : strings) {
+            sortedStrings.add(s);
+            sortedCompact.add(CompactSignature.encode(s));
+        }
+        Collections.sort(sortedStrings);
+        Collections.sort(sortedCompact);
+        for (int i = 0; i < strings.length; i++) {
+            Assert.assertEquals(sortedStrings.get(i), 
+                    sortedCompact.get(i).toString());
+            for (int j = 0; j < strings.length; j++) {
+                Assert.assertEquals(
+                        Integer.signum(strings[i].compareTo(strings[j])),
+                        Integer.signum(CompactSignature.encode(strings[i])
+                            .compareTo(CompactSignature.encode(strings[j]))));
+                Assert.assertEquals(i == j, 
+                        CompactSignature.encode(strings[i]).matches(strings[j]));
+            }
+        }
+    }
+
+    @Test
+    public void differentStringsAreNotEqual() {
+        CompactSignature a = CompactSignature.encode("[C]([O]=[C])");
+        CompactSignature b = CompactSignature.encode("[O]([C]=[O])");
+        CompactSignature c = CompactSignature.encode("[C]([O][C])");
+        Assert.assertFalse(a.equals(b));
+        Assert.assertFalse(a.equals(c));
+        Assert.assertTrue(a.compareTo(b) != 0);
+        Assert.assertEquals(
+                Integer.signum(a.compareTo(b)), -Integer.signum(b.compareTo(a)));
+    }
+
+    @Test
+    public void graphSignatureRoundTrip() {
+        SimpleGraph graph = SimpleGraphFactory.make26Fullerene();
+        SimpleGraphSignature signature = new SimpleGraphSignature(graph);
+        List<String> strings = signature.getVertexSignatureStrings();
+        List<CompactSignature> compact = 
+            signature.getCompactVertexSignatures();
+        Assert.assertEquals(strings.size(), compact.size());
+        for (int i = 0; i < strings.size(); i++) {
+            Assert.assertEquals(strings.get(i), compact.get(i).toString());
+            // a byte for each char, rather than two
+            Assert.assertEquals(
+                    strings.get(i).length(), compact.get(i).getCodeLength());
+        }
+    }
+
+    @Test
+    public void internedSignaturesAreShared() {
+        Molecule molecule = new Molecule();
+        molecule.addAtom("C");
+        molecule.addAtom("C");
+        molecule.addAtom("O");
+        molecule.addSingleBond(0, 1);
+        molecule.addSingleBond(0, 2);
+        molecule.addSingleBond(1, 2);
+        SignatureInterner interner = new SignatureInterner();
+        List<CompactSignature> first = 
+            new MoleculeSignature(molecule).getCompactVertexSignatures(interner);
+        List<CompactSignature> second = 
+            new MoleculeSignature(molecule).getCompactVertexSignatures(interner);
+        Assert.assertSame(first.get(0), first.get(1));
+        Assert.assertSame(first.get(2), second.get(2));
+        Assert.assertEquals(2, interner.size());
+    }
+
+    @Test
+    public void symmetryClassesKeepCompactSignatures() {
+        SimpleGraphSignature signature = 
+            new SimpleGraphSignature(SimpleGraphFactory.makePrism(5));
+        List<String> vertexStrings = signature.getVertexSignatureStrings();
+        for (SymmetryClass symmetryClass : signature.getSymmetryClasses()) {
+            String signatureString = symmetryClass.getSignatureString();
+            Assert.assertEquals(CompactSignature.encode(signatureString), 
+                    symmetryClass.getCompactSignature());
+            Assert.assertTrue(symmetryClass.hasSignature(signatureString));
+            for (int vertexIndex : symmetryClass) {
+                Assert.assertEquals(
+                        vertexStrings.get(vertexIndex), signatureString);
+            }
+        }
+    }
+
+}
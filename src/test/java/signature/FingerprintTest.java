@@ -0,0 +1,74 @@
+package signature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import signature.chemistry.AtomPermutor;
+import signature.chemistry.Molecule;
+import signature.chemistry.MoleculeFactory;
+import signature.chemistry.MoleculeSignature;
+import signature.simple.SimpleGraph;
+import signature.simple.SimpleGraphFactory;
+import signature.simple.SimpleGraphSignature;
+import signature.simple.SimpleVertexSignature;
+
+public class FingerprintTest {
+
+    @Test
+    public void streamedHashMatchesStringHash() {
+        String s = "[C]([C,1]=[O]#[N,12]([C,1]))";
+        for (int split = 0; split <= s.length(); split++) {
+            FingerprintHasher hasher = new FingerprintHasher();
+            hasher.update(s.substring(0, split));
+            hasher.update(s.toCharArray(), split, s.length() - split);
+            Assert.assertEquals(Fingerprint.of(s), hasher.finish());
+        }
+        Assert.assertFalse(Fingerprint.of(s).equals(Fingerprint.of(s + "]")));
+        Assert.assertFalse(Fingerprint.of("").equals(Fingerprint.of("[")));
+    }
+
+    @Test
+    public void addIsOrderIndependent() {
+        Fingerprint a = new Fingerprint(1, -1L);
+        Fingerprint b = Fingerprint.of("[C]");
+        Assert.assertEquals(a.add(b), b.add(a));
+        Assert.assertEquals(new Fingerprint(2, 0), a.add(new Fingerprint(0, 1)));
+    }
+
+    @Test
+    public void vertexFingerprintMatchesCanonicalString() {
+        SimpleGraph graph = SimpleGraphFactory.makePappusGraph();
+        for (int i = 0; i < graph.getVertexCount(); i++) {
+            String canonicalString = 
+                new SimpleVertexSignature(i, graph).toCanonicalString();
+            Assert.assertEquals(Fingerprint.of(canonicalString), 
+                    new SimpleVertexSignature(i, graph).toFingerprint());
+        }
+    }
+
+    @Test
+    public void fullFingerprintIsTheSameWithCachedStrings() {
+        SimpleGraph graph = SimpleGraphFactory.make26Fullerene();
+        SimpleGraphSignature signature = new SimpleGraphSignature(graph);
+        Fingerprint streamed = signature.toFullFingerprint();
+        signature.getVertexSignatureStrings();
+        Assert.assertEquals(streamed, signature.toFullFingerprint());
+    }
+
+    @Test
+    public void permutedMoleculesHaveTheSameFingerprints() {
+        Molecule molecule = MoleculeFactory.methylatedCyclobutane();
+        MoleculeSignature signature = new MoleculeSignature(molecule);
+        Fingerprint expected = signature.toFingerprint();
+        Fingerprint expectedFull = signature.toFullFingerprint();
+        AtomPermutor permutor = new AtomPermutor(molecule);
+        while (permutor.hasNext()) {
+            MoleculeSignature permuted = new MoleculeSignature(permutor.next());
+            Assert.assertEquals(expected, permuted.toFingerprint());
+            Assert.assertEquals(expectedFull, permuted.toFullFingerprint());
+        }
+        Assert.assertFalse(expected.equals(new MoleculeSignature(
+                MoleculeFactory.fiveCycle()).toFingerprint()));
+    }
+
+}
@@ -96,7 +96,7 @@ public class HeightTest {
         int n = 7;
         SimpleGraph kN = makeCompleteGraph(n);
         int expectedEdgeCount = (n * (n - 1)) / 2;
-        Assert.assertEquals(expectedEdgeCount, kN.edges.size());
+        Assert.assertEquals(expectedEdgeCount, kN.getEdges().size());
         regularGraphTest(kN, n - 1);
     }
     
@@ -0,0 +1,129 @@
+package signature;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import signature.simple.SimpleGraph;
+import signature.simple.SimpleGraphFactory;
+
+public class IncrementalRefinementTest {
+
+    /**
+     * Make a DAG for a graph, with a node in the next layer for each neighbour
+     * of a node other than its parents, down to the given height.
+     */
+    private DAG makeDAG(SimpleGraph graph, int height, 
+            DAG.RankingMethod rankingMethod) {
+        int vertexCount = graph.getVertexCount();
+        DAG dag = new DAG(0, vertexCount, rankingMethod);
+        List<DAG.Node> layer = dag.getRootLayer();
+        for (int depth = 1; depth <= height; depth++) {
+            DAG.Node[] made = new DAG.Node[vertexCount];
+            List<DAG.Node> nextLayer = new ArrayList<DAG.Node>();
+            for (DAG.Node node : layer) {
+                for (int neighbour : graph.getConnected(node.vertexIndex)) {
+                    boolean isParent = false;
+                    for (DAG.Node parent : node.parents) {
+                        isParent |= parent.vertexIndex == neighbour;
+                    }
+                    if (isParent) continue;
+                    if (made[neighbour] == null) {
+                        made[neighbour] = dag.makeNode(neighbour, depth);
+                        nextLayer.add(made[neighbour]);
+                    }
+                    dag.addRelation(made[neighbour], node);
+                    made[neighbour].addEdgeColor(node.vertexIndex, 1);
+                    node.addEdgeColor(neighbour, 1);
+                }
+            }
+            if (nextLayer.isEmpty()) break;
+            dag.addLayer(nextLayer);
+            layer = nextLayer;
+        }
+        dag.initializeWithIntLabels(new int[vertexCount]);
+        return dag;
+    }
+
+    private void assertSameInvariants(DAG sorted, DAG partitioned) {
+        Invariants expected = sorted.copyInvariants();
+        Invariants actual = partitioned.copyInvariants();
+        Assert.assertArrayEquals(
+                expected.vertexInvariants, actual.vertexInvariants);
+        Assert.assertArrayEquals(
+                expected.nodeInvariants, actual.nodeInvariants);
+    }
+
+    /**
+     * Color, save and restore as a search does, checking the invariants 
+     * against the sorting method after each refinement.
+     */
+    private void assertSameSearch(SimpleGraph graph, int height) {
+        DAG sorted = makeDAG(graph, height, DAG.RankingMethod.SORT);
+        DAG partitioned = makeDAG(graph, height, DAG.RankingMethod.PARTITION);
+        Random random = new Random(graph.getVertexCount());
+        int vertexCount = graph.getVertexCount();
+        int depth = 0;
+        int[] colored = new int[vertexCount];
+        for (int step = 0; step < 200; step++) {
+            if (depth > 0 && (depth == 4 || random.nextBoolean())) {
+                depth--;
+                for (DAG dag : new DAG[] { sorted, partitioned }) {
+                    dag.restoreInvariants();
+                    dag.setColor(colored[depth], -1);
+                }
+            } else {
+                int vertex = random.nextInt(vertexCount);
+                colored[depth] = vertex;
+                depth++;
+                for (DAG dag : new DAG[] { sorted, partitioned }) {
+                    dag.setColor(vertex, depth);
+                    dag.saveInvariants();
+                    dag.updateVertexInvariants();
+                }
+                assertSameInvariants(sorted, partitioned);
+            }
+        }
+    }
+
+    @Test
+    public void sameInvariantsAsSortingThroughASearch() {
+        assertSameSearch(SimpleGraphFactory.make4Cube(), 5);
+        assertSameSearch(SimpleGraphFactory.makePetersensGraph(), 3);
+        assertSameSearch(SimpleGraphFactory.makeTwistane(), 6);
+        assertSameSearch(SimpleGraphFactory.makeHerschelGraph(), 4);
+    }
+
+    @Test
+    public void onlyChangesAreRefinedAgain() {
+        SimpleGraph graph = SimpleGraphFactory.makeTwistane();
+        DAG dag = makeDAG(graph, 4, DAG.RankingMethod.PARTITION);
+        dag.updateVertexInvariants();
+        Invariants refined = dag.copyInvariants();
+        int keyCount = dag.getKeyCount();
+        Assert.assertTrue(keyCount > 0);
+
+        // nothing has changed, so no keys are made
+        dag.updateVertexInvariants();
+        Assert.assertEquals(keyCount, dag.getKeyCount());
+
+        // coloring a vertex makes new keys
+        dag.setColor(3, 1);
+        dag.saveInvariants();
+        dag.updateVertexInvariants();
+        Assert.assertTrue(dag.getKeyCount() > keyCount);
+
+        // but the refined partitions are restored with the invariants
+        dag.restoreInvariants();
+        dag.setColor(3, -1);
+        keyCount = dag.getKeyCount();
+        dag.updateVertexInvariants();
+        Assert.assertEquals(keyCount, dag.getKeyCount());
+        Assert.assertArrayEquals(refined.vertexInvariants, 
+                dag.copyInvariants().vertexInvariants);
+    }
+
+}
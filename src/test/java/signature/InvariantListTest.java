@@ -0,0 +1,56 @@
+package signature;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InvariantListTest {
+
+    public InvariantList makeList(int originalIndex, int... invariants) {
+        InvariantList list = new InvariantList(originalIndex);
+        list.addAll(invariants);
+        return list;
+    }
+
+    @Test
+    public void testSort() {
+        InvariantList[] lists = new InvariantList[] {
+            makeList(0, 1, 1, 2),
+            makeList(1, 2, 2, 2),
+            makeList(2, 1, 2),
+            makeList(3, 1, 2, 1),
+        };
+        Arrays.sort(lists);
+        Assert.assertEquals(2, lists[0].originalIndex);
+        Assert.assertEquals(0, lists[1].originalIndex);
+        Assert.assertEquals(3, lists[2].originalIndex);
+        Assert.assertEquals(1, lists[3].originalIndex);
+    }
+
+    @Test
+    public void testEqualsLargeValues() {
+        InvariantList a = makeList(0, 1000, 2000);
+        InvariantList b = makeList(1, 1000, 2000);
+        Assert.assertEquals(a, b);
+        Assert.assertEquals(0, a.compareTo(b));
+        Assert.assertEquals(a.hashCode(), b.hashCode());
+    }
+
+    @Test
+    public void testResetAndSortRange() {
+        InvariantList list = makeList(0, 1, 2, 3);
+        list.reset(5);
+        Assert.assertEquals(0, list.size());
+        for (int i = 20; i > 0; i--) {
+            list.add(i);
+        }
+        list.sort(2, list.size());
+        Assert.assertEquals(5, list.originalIndex);
+        Assert.assertEquals(20, list.get(0));
+        Assert.assertEquals(19, list.get(1));
+        Assert.assertEquals(1, list.get(2));
+        Assert.assertEquals(18, list.get(19));
+    }
+
+}
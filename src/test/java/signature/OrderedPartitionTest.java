@@ -0,0 +1,150 @@
+package signature;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OrderedPartitionTest {
+
+    private OrderedPartition makePartition(int[][] keys) {
+        int[] keyLengths = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keyLengths[i] = keys[i].length;
+        }
+        OrderedPartition partition = new OrderedPartition(keyLengths);
+        for (int i = 0; i < keys.length; i++) {
+            partition.setKey(i, keys[i]);
+        }
+        partition.refine(new PartitionRefiner());
+        return partition;
+    }
+
+    private int[] rank(int[][] keys) {
+        int total = 0;
+        for (int[] key : keys) {
+            total += key.length;
+        }
+        int[] flat = new int[total];
+        int[] keyStart = new int[keys.length];
+        int[] keyLength = new int[keys.length];
+        int position = 0;
+        for (int i = 0; i < keys.length; i++) {
+            keyStart[i] = position;
+            keyLength[i] = keys[i].length;
+            System.arraycopy(keys[i], 0, flat, position, keys[i].length);
+            position += keys[i].length;
+        }
+        int[] ranks = new int[keys.length];
+        new PartitionRefiner().rank(
+                keys.length, flat, keyStart, keyLength, ranks);
+        return ranks;
+    }
+
+    private int[] getRanks(OrderedPartition partition) {
+        int[] ranks = new int[partition.getItemCount()];
+        partition.getRanks(ranks);
+        return ranks;
+    }
+
+    @Test
+    public void firstRefinementRanksEveryItem() {
+        int[][] keys = { { 1, 1, 2 }, { 2, 2, 2 }, { 1, 2 }, { 1, 2, 1 } };
+        OrderedPartition partition = makePartition(keys);
+        Assert.assertEquals(4, partition.getSplitterCount());
+        Assert.assertArrayEquals(new int[] { 2, 4, 1, 3 }, getRanks(partition));
+    }
+
+    @Test
+    public void onlyTheChangedItemSplitsItsCell() {
+        int[][] keys = { { 1, 1 }, { 1, 1 }, { 1, 1 }, { 2, 0 } };
+        OrderedPartition partition = makePartition(keys);
+        int[] labels = new int[4];
+        for (int i = 0; i < 4; i++) {
+            labels[i] = partition.getLabel(i);
+        }
+
+        // an unchanged key is not queued
+        Assert.assertFalse(partition.setKey(0, new int[] { 1, 1 }));
+        Assert.assertTrue(partition.setKey(1, new int[] { 1, 5 }));
+        partition.refine(new PartitionRefiner());
+
+        Assert.assertEquals(1, partition.getSplitterCount());
+        Assert.assertEquals(1, partition.getSplitter(0));
+        Assert.assertEquals(3, partition.getCellCount());
+        Assert.assertEquals(labels[0], partition.getLabel(0));
+        Assert.assertEquals(labels[2], partition.getLabel(2));
+        Assert.assertEquals(labels[3], partition.getLabel(3));
+        Assert.assertTrue(partition.getLabel(0) < partition.getLabel(1));
+        Assert.assertTrue(partition.getLabel(1) < partition.getLabel(3));
+        Assert.assertArrayEquals(new int[] { 1, 2, 1, 3 }, getRanks(partition));
+    }
+
+    @Test
+    public void aCellThatKeepsItsOrderKeepsItsLabel() {
+        int[][] keys = { { 1 }, { 5 }, { 5 }, { 9 } };
+        OrderedPartition partition = makePartition(keys);
+        int label = partition.getLabel(1);
+        partition.setKey(1, new int[] { 6 });
+        partition.setKey(2, new int[] { 6 });
+        partition.refine(new PartitionRefiner());
+        Assert.assertEquals(0, partition.getSplitterCount());
+        Assert.assertEquals(label, partition.getLabel(1));
+        Assert.assertEquals(label, partition.getLabel(2));
+    }
+
+    @Test
+    public void sameRanksAsRankingFromScratch() {
+        Random random = new Random(17);
+        int itemCount = 40;
+        int[][] keys = new int[itemCount][];
+        for (int i = 0; i < itemCount; i++) {
+            keys[i] = new int[1 + random.nextInt(3)];
+        }
+        OrderedPartition partition = makePartition(keys);
+        for (int round = 0; round < 200; round++) {
+            int changes = 1 + random.nextInt(5);
+            for (int j = 0; j < changes; j++) {
+                int item = random.nextInt(itemCount);
+                keys[item][random.nextInt(keys[item].length)] = 
+                    random.nextInt(4);
+                partition.setKey(item, keys[item]);
+            }
+            partition.refine(new PartitionRefiner());
+            int[] ranks = rank(keys);
+            Assert.assertArrayEquals(ranks, getRanks(partition));
+            for (int i = 0; i < itemCount; i++) {
+                for (int j = 0; j < itemCount; j++) {
+                    Assert.assertEquals(ranks[i] < ranks[j], 
+                            partition.getLabel(i) < partition.getLabel(j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void everyItemSplitsWhenTheLabelsRunOut() {
+        int itemCount = 64;
+        int[][] keys = new int[itemCount][];
+        for (int i = 0; i < itemCount; i++) {
+            keys[i] = new int[] { (i == 0) ? 0 : 1000 };
+        }
+        OrderedPartition partition = makePartition(keys);
+
+        // each new cell goes just after the first, halving the gap each time
+        boolean relabelled = false;
+        for (int i = 1; i < itemCount; i++) {
+            keys[i][0] = 1000 - i;
+            partition.setKey(i, keys[i]);
+            partition.refine(new PartitionRefiner());
+            if (partition.getSplitterCount() == itemCount) {
+                relabelled = true;
+            } else {
+                Assert.assertEquals(1, partition.getSplitterCount());
+            }
+            Assert.assertArrayEquals(rank(keys), getRanks(partition));
+        }
+        Assert.assertTrue(relabelled);
+    }
+
+}
@@ -0,0 +1,115 @@
+package signature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import signature.simple.SimpleGraph;
+import signature.simple.SimpleGraphFactory;
+import signature.simple.SimpleVertexSignature;
+
+public class PartitionRefinerTest {
+
+    @Test
+    public void lengthThenLexicographicOrder() {
+        // keys : [1, 1, 2], [2, 2, 2], [1, 2], [1, 2, 1], [1, 1, 2]
+        int[] keys = { 1, 1, 2,  2, 2, 2,  1, 2,  1, 2, 1,  1, 1, 2 };
+        int[] keyStart = { 0, 3, 6, 8, 11 };
+        int[] keyLength = { 3, 3, 2, 3, 3 };
+        int[] ranks = new int[5];
+        int count = new PartitionRefiner().rank(
+                5, keys, keyStart, keyLength, ranks);
+        Assert.assertEquals(4, count);
+        Assert.assertArrayEquals(new int[] { 2, 4, 1, 3, 2 }, ranks);
+    }
+
+    @Test
+    public void sparseAndNegativeValues() {
+        int[] keys = { 1000000, -1, -5, 1000000 };
+        int[] keyStart = { 0, 1, 2, 3 };
+        int[] keyLength = { 1, 1, 1, 1 };
+        int[] ranks = new int[4];
+        new PartitionRefiner().rank(4, keys, keyStart, keyLength, ranks);
+        Assert.assertArrayEquals(new int[] { 3, 2, 1, 3 }, ranks);
+    }
+
+    private DAG makeStar(DAG.RankingMethod rankingMethod) {
+        DAG dag = new DAG(0, 4, rankingMethod);
+        DAG.Node root = dag.getRoot();
+        for (int i = 1; i < 4; i++) {
+            DAG.Node child = dag.makeNodeInLayer(i, 1);
+            child.addEdgeColor(0, 1);
+            root.addEdgeColor(i, 1);
+            dag.addRelation(child, root);
+        }
+        return dag;
+    }
+
+    @Test
+    public void nullLabelsRankTogether() {
+        String[] labels = { "C", null, "O", null };
+        DAG partitioned = makeStar(DAG.RankingMethod.PARTITION);
+        partitioned.initializeWithStringLabels(labels);
+        int[] ranks = partitioned.copyInvariants().getVertexInvariants();
+        Assert.assertEquals(ranks[1], ranks[3]);
+        Assert.assertTrue(ranks[1] < ranks[2]);
+        
+        // the sorting method accepts null labels as well
+        DAG sorted = makeStar(DAG.RankingMethod.SORT);
+        sorted.initializeWithStringLabels(labels);
+        partitioned.updateVertexInvariants();
+        sorted.updateVertexInvariants();
+    }
+
+    public void assertSameSignatures(SimpleGraph graph) {
+        for (int i = 0; i < graph.getVertexCount(); i++) {
+            SimpleVertexSignature sorted = new SimpleVertexSignature(
+                    i, -1, graph, DAG.RankingMethod.SORT);
+            SimpleVertexSignature partitioned = new SimpleVertexSignature(
+                    i, -1, graph, DAG.RankingMethod.PARTITION);
+            Assert.assertEquals(
+                    sorted.toCanonicalString(), partitioned.toCanonicalString());
+        }
+    }
+
+    @Test
+    public void sortingIsTheDefault() {
+        SimpleGraph graph = SimpleGraphFactory.makeTwistane();
+        SimpleVertexSignature signature = new SimpleVertexSignature(0, graph);
+        Assert.assertEquals(DAG.RankingMethod.SORT, 
+                signature.getRankingMethod());
+    }
+
+    @Test
+    public void changingMethodRanksInitialInvariantsAgain() {
+        SimpleGraph graph = SimpleGraphFactory.makeTwistane();
+        for (int i = 0; i < graph.getVertexCount(); i++) {
+            SimpleVertexSignature partitioned = new SimpleVertexSignature(
+                    i, -1, graph, DAG.RankingMethod.PARTITION);
+            SimpleVertexSignature changed = new SimpleVertexSignature(i, graph);
+            changed.setRankingMethod(DAG.RankingMethod.PARTITION);
+            Assert.assertEquals(partitioned.toCanonicalString(), 
+                    changed.toCanonicalString());
+        }
+    }
+
+    @Test
+    public void sameSignaturesAsSorting() {
+        assertSameSignatures(SimpleGraphFactory.makeAdamantane());
+        assertSameSignatures(SimpleGraphFactory.makeTwistane());
+        assertSameSignatures(SimpleGraphFactory.makeSpiroPentagons());
+        assertSameSignatures(SimpleGraphFactory.makePrism(5));
+        assertSameSignatures(SimpleGraphFactory.makeHerschelGraph());
+    }
+    
+    @Test
+    public void sameSignaturesAsSortingForSymmetricGraphs() {
+        // many branches in the search, each refining a partition kept from
+        // the one before
+        assertSameSignatures(SimpleGraphFactory.make4Cube());
+        assertSameSignatures(SimpleGraphFactory.makePetersensGraph());
+        assertSameSignatures(SimpleGraphFactory.makePappusGraph());
+        assertSameSignatures(SimpleGraphFactory.makeCuneane());
+        assertSameSignatures(SimpleGraphFactory.make26Fullerene());
+    }
+
+}
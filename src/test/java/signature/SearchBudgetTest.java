@@ -0,0 +1,135 @@
+package signature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import signature.simple.SimpleGraph;
+import signature.simple.SimpleGraphFactory;
+import signature.simple.SimpleGraphSignature;
+import signature.simple.SimpleVertexSignature;
+
+public class SearchBudgetTest {
+
+    @Test
+    public void leafLimitStopsSearch() {
+        SimpleGraph graph = SimpleGraphFactory.make4Cube();
+        SimpleVertexSignature signature = new SimpleVertexSignature(0, graph);
+        signature.setBudget(new SearchBudget(0, 3, 0));
+        try {
+            signature.toCanonicalString();
+            Assert.fail("Expected the budget to be exceeded");
+        } catch (BudgetExceededException e) {
+            Assert.assertEquals(
+                    BudgetExceededException.Limit.LEAVES, e.getLimit());
+            Assert.assertEquals(3, e.getLeafCount());
+        }
+    }
+
+    @Test
+    public void refinementLimitStopsSearch() {
+        SimpleGraph graph = SimpleGraphFactory.makePappusGraph();
+        SimpleVertexSignature signature = new SimpleVertexSignature(0, graph);
+        signature.setBudget(new SearchBudget(0, 0, 3));
+        try {
+            signature.toCanonicalString();
+            Assert.fail("Expected the budget to be exceeded");
+        } catch (BudgetExceededException e) {
+            Assert.assertEquals(
+                    BudgetExceededException.Limit.REFINEMENTS, e.getLimit());
+        }
+    }
+
+    @Test
+    public void largeBudgetGivesSameResult() {
+        SimpleGraph graph = SimpleGraphFactory.makePappusGraph();
+        int n = graph.getVertexCount();
+        SimpleVertexSignature expected = new SimpleVertexSignature(0, graph);
+        SimpleVertexSignature budgeted = new SimpleVertexSignature(0, graph);
+        budgeted.setBudget(new SearchBudget(60000, 1000000, 1000000));
+        Assert.assertEquals(
+                expected.toCanonicalString(), budgeted.toCanonicalString());
+        Assert.assertArrayEquals(expected.getCanonicalLabelling(n), 
+                budgeted.getCanonicalLabelling(n));
+    }
+
+    @Test
+    public void signatureCanBeUsedAfterStopping() {
+        SimpleGraph graph = SimpleGraphFactory.make4Cube();
+        int n = graph.getVertexCount();
+        SimpleVertexSignature expected = new SimpleVertexSignature(0, graph);
+        String expectedString = expected.toCanonicalString();
+        int[] expectedLabels = expected.getCanonicalLabelling(n);
+        
+        SimpleVertexSignature signature = new SimpleVertexSignature(0, graph);
+        signature.setBudget(new SearchBudget(0, 2, 0));
+        try {
+            signature.toCanonicalString();
+            Assert.fail("Expected the budget to be exceeded");
+        } catch (BudgetExceededException e) {
+            // expected
+        }
+        signature.setBudget(null);
+        Assert.assertEquals(expectedString, signature.toCanonicalString());
+        Assert.assertArrayEquals(expectedLabels, 
+                signature.getCanonicalLabelling(n));
+    }
+
+    @Test
+    public void graphSignatureBudget() {
+        SimpleGraph graph = SimpleGraphFactory.make4Cube();
+        SimpleGraphSignature signature = new SimpleGraphSignature(graph);
+        signature.setBudget(new SearchBudget(0, 2, 0));
+        try {
+            signature.toCanonicalString();
+            Assert.fail("Expected the budget to be exceeded");
+        } catch (BudgetExceededException e) {
+            // expected
+        }
+        signature.setBudget(null);
+        Assert.assertEquals(new SimpleGraphSignature(graph).toCanonicalString(), 
+                signature.toCanonicalString());
+    }
+
+    @Test
+    public void graphBudgetCoversAllVertices() {
+        SimpleGraph graph = SimpleGraphFactory.make4Cube();
+        SearchBudget budget = new SearchBudget(0, 20, 0);
+        
+        // enough for the search of any one vertex...
+        SimpleVertexSignature vertexSignature = 
+            new SimpleVertexSignature(0, graph);
+        vertexSignature.setBudget(budget);
+        vertexSignature.toCanonicalString();
+        
+        // ...but not for the searches of all the vertices together
+        SimpleGraphSignature signature = new SimpleGraphSignature(graph);
+        signature.setBudget(budget);
+        try {
+            signature.toFullString();
+            Assert.fail("Expected the budget to be exceeded");
+        } catch (BudgetExceededException e) {
+            Assert.assertEquals(
+                    BudgetExceededException.Limit.LEAVES, e.getLimit());
+            Assert.assertEquals(20, e.getLeafCount());
+        }
+    }
+
+    @Test
+    public void interruptStopsSearch() {
+        SimpleGraph graph = SimpleGraphFactory.make4Cube();
+        SimpleVertexSignature signature = new SimpleVertexSignature(0, graph);
+        signature.setBudget(new SearchBudget(0, 0, 0));
+        Thread.currentThread().interrupt();
+        try {
+            signature.toCanonicalString();
+            Assert.fail("Expected the search to be interrupted");
+        } catch (BudgetExceededException e) {
+            Assert.assertEquals(
+                    BudgetExceededException.Limit.INTERRUPTED, e.getLimit());
+        } finally {
+            // the interrupt is left set, for the caller to see
+            Assert.assertTrue(Thread.interrupted());
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package signature;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import signature.simple.SimpleGraph;
+import signature.simple.SimpleGraphFactory;
+import signature.simple.SimpleVertexSignature;
+
+public class SignatureBufferTest {
+
+    public SignatureBuffer makeBuffer(String s, SignatureBuffer bound) {
+        SignatureBuffer buffer = new SignatureBuffer();
+        buffer.reset(bound);
+        buffer.append(s);
+        return buffer;
+    }
+
+    public void assertComparison(String a, String b) {
+        SignatureBuffer bound = makeBuffer(b, null);
+        SignatureBuffer buffer = makeBuffer(a, bound);
+        Assert.assertEquals(
+                Integer.signum(a.compareTo(b)), buffer.compareToBound());
+        Assert.assertEquals(a, buffer.toString());
+    }
+
+    @Test
+    public void compareToBoundTest() {
+        assertComparison("[.]([.])", "[.]([.])");
+        assertComparison("[.]([.])", "[.]([.,1])");
+        assertComparison("[.]([.,1])", "[.]([.])");
+        assertComparison("[.]", "[.]([.])");
+        assertComparison("[.]([.])", "[.]");
+        assertComparison("", "");
+        assertComparison("[C]", "");
+    }
+
+    @Test
+    public void belowBoundAtFirstDifference() {
+        SignatureBuffer bound = makeBuffer("[.]([.,2])", null);
+        SignatureBuffer buffer = makeBuffer("[.]([.,", bound);
+        Assert.assertFalse(buffer.isBelowBound());
+        buffer.append(1);
+        Assert.assertTrue(buffer.isBelowBound());
+        buffer.append("9999");
+        Assert.assertEquals(-1, buffer.compareToBound());
+    }
+
+    @Test
+    public void aboveCeilingAtFirstDifference() {
+        SignatureBuffer ceiling = makeBuffer("[.]([.,2])", null);
+        SignatureBuffer buffer = new SignatureBuffer();
+        buffer.reset(null, ceiling);
+        buffer.append("[.]([.,");
+        Assert.assertFalse(buffer.isAboveCeiling());
+        buffer.append(3);
+        Assert.assertTrue(buffer.isAboveCeiling());
+        Assert.assertEquals(1, buffer.compareToCeiling());
+        
+        buffer.reset(null, ceiling);
+        buffer.append("[.]([.,2])");
+        Assert.assertFalse(buffer.isAboveCeiling());
+        Assert.assertEquals(0, buffer.compareToCeiling());
+    }
+
+    @Test
+    public void canonicalStringBelowBound() {
+        SimpleGraph graph = SimpleGraphFactory.makePappusGraph();
+        String canonical = 
+            new SimpleVertexSignature(0, graph).toCanonicalString();
+        Assert.assertNull(new SimpleVertexSignature(0, graph)
+                .toCanonicalStringBelow(canonical));
+        Assert.assertNull(new SimpleVertexSignature(0, graph)
+                .toCanonicalStringBelow("[.]"));
+        Assert.assertEquals(canonical, new SimpleVertexSignature(0, graph)
+                .toCanonicalStringBelow(canonical + "]"));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        StringBuilder expected = new StringBuilder();
+        SignatureBuffer buffer = new SignatureBuffer();
+        buffer.reset(null);
+        for (int i = 0; i < 1000; i++) {
+            buffer.append(i);
+            expected.append(i);
+        }
+        Assert.assertEquals(expected.toString(), buffer.toString());
+        Assert.assertEquals(expected.length(), buffer.length());
+    }
+
+    public void assertSameSignatures(SimpleGraph graph) {
+        int n = graph.getVertexCount();
+        for (int i = 0; i < n; i++) {
+            SimpleVertexSignature full = new SimpleVertexSignature(i, graph);
+            full.setPrefixPruning(false);
+            SimpleVertexSignature pruned = new SimpleVertexSignature(i, graph);
+            pruned.setPrefixPruning(true);
+            Assert.assertEquals(
+                    full.toCanonicalString(), pruned.toCanonicalString());
+            Assert.assertArrayEquals(
+                    full.getCanonicalLabelling(n),
+                    pruned.getCanonicalLabelling(n));
+        }
+    }
+
+    @Test
+    public void sameSignaturesWithPrefixPruning() {
+        assertSameSignatures(SimpleGraphFactory.make4Cube());
+        assertSameSignatures(SimpleGraphFactory.makePappusGraph());
+        assertSameSignatures(SimpleGraphFactory.make26Fullerene());
+        assertSameSignatures(SimpleGraphFactory.makeCuneane());
+    }
+
+}
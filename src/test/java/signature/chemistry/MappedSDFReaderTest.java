@@ -0,0 +1,104 @@
+package signature.chemistry;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedSDFReaderTest {
+
+    public void assertSameMolecules(String filename, int windowSize) 
+        throws IOException {
+        List<Molecule> expected = MoleculeReader.readSDFFile(filename);
+        MappedSDFReader reader = new MappedSDFReader(filename, windowSize);
+        int count = 0;
+        for (Molecule molecule : reader) {
+            Assert.assertEquals(expected.get(count).name, molecule.name);
+            Assert.assertEquals(
+                    expected.get(count).toEdgeString(), molecule.toEdgeString());
+            Assert.assertEquals(
+                    new MoleculeSignature(expected.get(count)).toCanonicalString(),
+                    new MoleculeSignature(molecule).toCanonicalString());
+            count++;
+        }
+        reader.close();
+        Assert.assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void sameMoleculesAsReader() throws IOException {
+        assertSameMolecules("data/large_example.sdf", 1 << 20);
+        assertSameMolecules("data/test.sdf", 1 << 20);
+    }
+
+    @Test
+    public void recordsAcrossWindows() throws IOException {
+        // windows smaller than a record have to grow, and records are split 
+        // across the ends of the windows
+        assertSameMolecules("data/large_example.sdf", 100);
+        assertSameMolecules("data/test.sdf", 333);
+    }
+
+    @Test
+    public void windowsLineEndingsAndBadRecords() throws IOException {
+        File file = File.createTempFile("mapped", ".sdf");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        writer.write("bad\r\n\r\n\r\n  x\r\n$$$$\r\n");
+        writer.write("\r\n\r\n\r\n  2  1  0  0  0  0  0  0  0  0999 V2000\r\n");
+        writer.write("    0.0000    0.0000    0.0000 C   0  0\r\n");
+        writer.write("    0.0000    0.0000    0.0000 Cl  0  0\r\n");
+        writer.write("  1  2  2  0\r\nM  END\r\n$$$$");
+        writer.close();
+        MappedSDFReader reader = MoleculeReader.mapSDFFile(file.getPath());
+        Assert.assertTrue(reader.hasNext());
+        Molecule molecule = reader.next();
+        Assert.assertEquals("Cl", molecule.getSymbolFor(1));
+        Assert.assertEquals(1, molecule.getBondCount());
+        Assert.assertFalse(reader.hasNext());
+        Assert.assertEquals(2, reader.getRecordCount());
+        reader.close();
+    }
+
+    @Test
+    public void fieldsParsedLikeSDFReader() throws IOException {
+        File file = File.createTempFile("mapped", ".sdf");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        // a space inside a number is not skipped over
+        writer.write("\n\n\n1 2  1  0  0  0  0  0  0  0  0999 V2000\n");
+        writer.write("    0.0000    0.0000    0.0000 C   0  0\n");
+        writer.write("  1  2  1  0\nM  END\n$$$$\n");
+        // but a leading plus sign and tabs around a symbol are allowed
+        writer.write("\n\n\n +2  1  0  0  0  0  0  0  0  0999 V2000\n");
+        writer.write("    0.0000    0.0000    0.0000 C   0  0\n");
+        writer.write("    0.0000    0.0000    0.0000 \tO\t  0  0\n");
+        writer.write("  1 +2  1  0\nM  END\n$$$$\n");
+        writer.close();
+
+        final List<Integer> skipped = new ArrayList<Integer>();
+        MappedSDFReader reader = MoleculeReader.mapSDFFile(file.getPath());
+        reader.setSkippedRecordListener(new SkippedRecordListener() {
+            public void recordSkipped(int recordIndex, Exception cause) {
+                skipped.add(recordIndex);
+            }
+        });
+        List<Molecule> expected = MoleculeReader.readSDFFile(file.getPath());
+        Assert.assertEquals(1, expected.size());
+        Assert.assertTrue(reader.hasNext());
+        Molecule molecule = reader.next();
+        Assert.assertEquals(expected.get(0).toEdgeString(), 
+                molecule.toEdgeString());
+        Assert.assertEquals("O", molecule.getSymbolFor(1));
+        Assert.assertFalse(reader.hasNext());
+        Assert.assertEquals(1, reader.getSkippedRecordCount());
+        Assert.assertEquals(Arrays.asList(0), skipped);
+        reader.close();
+    }
+
+}
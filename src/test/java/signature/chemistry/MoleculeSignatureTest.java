@@ -1,12 +1,19 @@
 package signature.chemistry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
 import signature.ColoredTree;
+import signature.SearchBudget;
 import signature.SymmetryClass;
 import signature.chemistry.AtomPermutor;
 import signature.chemistry.AtomSignature;
@@ -359,6 +366,35 @@ public class MoleculeSignatureTest {
         }
     }
     
+    @Test
+    public void testSymmetryClassOrder() {
+        // H-C(-H)-O-H : the classes are in order of their first atom
+        Molecule molecule = new Molecule();
+        molecule.addAtom("H");
+        molecule.addAtom("C");
+        molecule.addAtom("H");
+        molecule.addAtom("O");
+        molecule.addAtom("H");
+        molecule.addSingleBond(0, 1);
+        molecule.addSingleBond(1, 2);
+        molecule.addSingleBond(1, 3);
+        molecule.addSingleBond(3, 4);
+        MoleculeSignature signature = new MoleculeSignature(molecule);
+        List<SymmetryClass> symmetryClasses = signature.getSymmetryClasses();
+        Assert.assertEquals(4, symmetryClasses.size());
+        List<Integer> hydrogens = new ArrayList<Integer>();
+        for (int atomIndex : symmetryClasses.get(0)) {
+            hydrogens.add(atomIndex);
+        }
+        Assert.assertEquals(Arrays.asList(0, 2), hydrogens);
+        Assert.assertTrue(
+                symmetryClasses.get(1).getSignatureString().startsWith("[C"));
+        Assert.assertTrue(
+                symmetryClasses.get(2).getSignatureString().startsWith("[O"));
+        Assert.assertTrue(
+                symmetryClasses.get(3).getSignatureString().startsWith("[H"));
+    }
+    
     @Test
     public void testMethyneFragmentSignatures() {
         Molecule molecule = new Molecule();
@@ -389,5 +425,250 @@ public class MoleculeSignatureTest {
         molecule.addSingleBond(2, 5);
         this.testCanonicalIsUnique(molecule);
     }
+    
+    @Test
+    public void testCachedVertexSignatures() {
+        Molecule molecule = 
+            MoleculeReader.readMolfile("data/multCycle.sdf");
+        final int[] vertexSignatureCount = new int[1];
+        MoleculeSignature cached = new MoleculeSignature(molecule) {
+            public String signatureStringForVertex(int vertexIndex) {
+                vertexSignatureCount[0]++;
+                return super.signatureStringForVertex(vertexIndex);
+            }
+        };
+        String graphSignature = cached.getGraphSignature();
+        List<SymmetryClass> symmetryClasses = cached.getSymmetryClasses();
+        int[] labels = cached.getCanonicalLabels();
+        String canonicalString = cached.toCanonicalString();
+        String fullString = cached.toFullString();
+        Assert.assertEquals(molecule.getAtomCount(), vertexSignatureCount[0]);
+        
+        Assert.assertEquals(graphSignature, 
+                new MoleculeSignature(molecule).getGraphSignature());
+        Assert.assertEquals(symmetryClasses.toString(), 
+                new MoleculeSignature(molecule).getSymmetryClasses().toString());
+        Assert.assertEquals(canonicalString, 
+                new MoleculeSignature(molecule).toCanonicalString());
+        Assert.assertEquals(fullString, 
+                new MoleculeSignature(molecule).toFullString());
+        int[] expectedLabels = new MoleculeSignature(molecule).getCanonicalLabels();
+        for (int i = 0; i < labels.length; i++) {
+            Assert.assertEquals(expectedLabels[i], labels[i]);
+        }
+    }
+    
+    @Test
+    public void testConcurrentVertexSignatures() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (Molecule molecule : 
+                MoleculeReader.readSDFFile("data/large_example.sdf")) {
+                MoleculeSignature concurrent = new MoleculeSignature(molecule);
+                concurrent.setExecutor(executor);
+                MoleculeSignature serial = new MoleculeSignature(molecule);
+                Assert.assertEquals(serial.getVertexSignatureStrings(), 
+                        concurrent.getVertexSignatureStrings());
+                Assert.assertEquals(serial.getSymmetryClasses().toString(), 
+                        concurrent.getSymmetryClasses().toString());
+                int[] expectedLabels = serial.getCanonicalLabels();
+                int[] labels = concurrent.getCanonicalLabels();
+                for (int i = 0; i < labels.length; i++) {
+                    Assert.assertEquals(expectedLabels[i], labels[i]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testBoundedCanonicalSearch() {
+        for (Molecule molecule : 
+            MoleculeReader.readSDFFile("data/large_example.sdf")) {
+            MoleculeSignature bounded = new MoleculeSignature(molecule);
+            bounded.setBoundedCanonicalSearch(true);
+            Assert.assertEquals(
+                    new MoleculeSignature(molecule).toCanonicalString(), 
+                    bounded.toCanonicalString());
+        }
+    }
+    
+    @Test
+    public void testRememberedStringsKeepCanonicalString() {
+        for (Molecule molecule : 
+            MoleculeReader.readSDFFile("data/large_example.sdf")) {
+            MoleculeSignature filtered = new MoleculeSignature(molecule);
+            MoleculeSignature madeAll = new MoleculeSignature(molecule);
+            madeAll.getVertexSignatureStrings();
+            Assert.assertEquals(
+                    madeAll.toCanonicalString(), filtered.toCanonicalString());
+        }
+    }
+    
+    public void assertPrefilterIsCanonical(Molecule molecule) {
+        for (boolean prefilter : new boolean[] { true, false }) {
+            MoleculeSignature signature = new MoleculeSignature(molecule);
+            signature.setPrefilter(prefilter);
+            String expected = signature.toCanonicalString();
+            AtomPermutor permutor = new AtomPermutor(molecule);
+            while (permutor.hasNext()) {
+                MoleculeSignature permutedSignature = 
+                    new MoleculeSignature(permutor.next());
+                permutedSignature.setPrefilter(prefilter);
+                Assert.assertEquals(
+                        expected, permutedSignature.toCanonicalString());
+            }
+        }
+    }
+    
+    @Test
+    public void testPrefilterIsCanonical() {
+        Molecule molecule = new Molecule();
+        molecule.addAtom("C");
+        molecule.addAtom("C");
+        molecule.addAtom("O");
+        molecule.addAtom("Cl");
+        molecule.addAtom("N");
+        molecule.addSingleBond(0, 1);
+        molecule.addSingleBond(1, 2);
+        molecule.addSingleBond(1, 3);
+        molecule.addSingleBond(3, 4);
+        assertPrefilterIsCanonical(molecule);
+    }
+    
+    @Test
+    public void testPrefilterIsCanonicalForCarbonSkeletons() {
+        // every atom has the same label, so the degrees and the height 1 
+        // and 2 signatures choose the atoms to canonize
+        assertPrefilterIsCanonical(MoleculeFactory.methylatedCyclobutane());
+        assertPrefilterIsCanonical(MoleculeFactory.pseudopropellane());
+    }
+    
+    /**
+     * Give a signature a budget, to count the vertex signatures it makes - 
+     * a remembered string is looked up without any search.
+     */
+    public SearchBudget countSearches(MoleculeSignature signature) {
+        SearchBudget budget = new SearchBudget(0, 0, 0).start();
+        signature.setBudget(budget);
+        return budget;
+    }
+
+    @Test
+    public void testAtomSignaturesAreRemembered() {
+        Molecule molecule = MoleculeFactory.methylatedCyclobutane();
+        MoleculeSignature signature = new MoleculeSignature(molecule);
+        SearchBudget budget = countSearches(signature);
+        for (int height = 0; height < 3; height++) {
+            String first = signature.signatureStringForVertex(0, height);
+            int leaves = budget.getLeafCount();
+            Assert.assertEquals(
+                    first, signature.signatureStringForVertex(0, height));
+            Assert.assertEquals(leaves, budget.getLeafCount());
+            Assert.assertEquals(new AtomSignature(
+                    molecule, 0, height).toCanonicalString(), first);
+        }
+        String first = signature.signatureStringForVertex(1);
+        int leaves = budget.getLeafCount();
+        Assert.assertEquals(first, signature.signatureStringForVertex(1, -1));
+        Assert.assertEquals(leaves, budget.getLeafCount());
+    }
+
+    @Test
+    public void testAtomSignatureMemoIsBounded() {
+        Molecule molecule = MoleculeFactory.methylatedCyclobutane();
+        MoleculeSignature signature = new MoleculeSignature(molecule);
+        SearchBudget budget = countSearches(signature);
+        signature.setMemoSize(2);
+        String first = signature.signatureStringForVertex(0, 1);
+        signature.signatureStringForVertex(1, 1);
+        signature.signatureStringForVertex(2, 1);
+        int leaves = budget.getLeafCount();
+        String again = signature.signatureStringForVertex(0, 1);
+        Assert.assertEquals(first, again);
+        Assert.assertTrue(budget.getLeafCount() > leaves);
+    }
+
+    @Test
+    public void testGraphMethodsShareTheMemo() {
+        Molecule molecule = MoleculeFactory.methylatedCyclobutane();
+        MoleculeSignature signature = new MoleculeSignature(molecule);
+        SearchBudget budget = countSearches(signature);
+        String vertexString = signature.signatureStringForVertex(2, 1);
+        signature.getSymmetryClasses(1);
+        int leaves = budget.getLeafCount();
+        Assert.assertEquals(
+                vertexString, signature.signatureStringForVertex(2, 1));
+        Assert.assertEquals(leaves, budget.getLeafCount());
+        List<String> vertexStrings = signature.getVertexSignatureStrings();
+        leaves = budget.getLeafCount();
+        Assert.assertEquals(
+                vertexStrings.get(3), signature.signatureStringForVertex(3));
+        Assert.assertEquals(leaves, budget.getLeafCount());
+    }
+
+    @Test
+    public void testClearMemo() {
+        Molecule molecule = MoleculeFactory.methylatedCyclobutane();
+        MoleculeSignature signature = new MoleculeSignature(molecule);
+        SearchBudget budget = countSearches(signature);
+        String before = signature.signatureStringForVertex(0);
+        int[] labels = signature.getCanonicalLabels();
+        signature.clearMemo();
+        int leaves = budget.getLeafCount();
+        String after = signature.signatureStringForVertex(0);
+        Assert.assertEquals(before, after);
+        Assert.assertTrue(budget.getLeafCount() > leaves);
+        Assert.assertEquals(Arrays.toString(labels), 
+                Arrays.toString(signature.getCanonicalLabels()));
+    }
+
+    public void assertSameAtomSignatureCounts(
+            Molecule molecule, int maxHeight) {
+        assertSameAtomSignatureCounts(
+                new MoleculeSignature(molecule), molecule, maxHeight);
+    }
+
+    public void assertSameAtomSignatureCounts(
+            MoleculeSignature signature, Molecule molecule, int maxHeight) {
+        List<Map<String, Integer>> counts = 
+            signature.getAtomSignatureCounts(maxHeight);
+        Assert.assertEquals(maxHeight + 1, counts.size());
+        for (int height = 0; height <= maxHeight; height++) {
+            Map<String, Integer> expected = new HashMap<String, Integer>();
+            for (int i = 0; i < molecule.getAtomCount(); i++) {
+                String signatureString = 
+                    new AtomSignature(molecule, i, height).toCanonicalString();
+                Integer count = expected.get(signatureString);
+                expected.put(signatureString, count == null ? 1 : count + 1);
+            }
+            Assert.assertEquals(expected, counts.get(height));
+        }
+    }
+
+    @Test
+    public void testAtomSignatureCounts() {
+        assertSameAtomSignatureCounts(
+                MoleculeFactory.methylatedCyclobutane(), 4);
+        assertSameAtomSignatureCounts(MoleculeFactory.propellane(), 3);
+        assertSameAtomSignatureCounts(
+                MoleculeReader.readMolfile("data/multCycle.sdf"), 5);
+        for (Molecule molecule : MoleculeReader.readSDFFile("data/test.sdf")) {
+            assertSameAtomSignatureCounts(molecule, 3);
+        }
+    }
+
+    @Test
+    public void testAtomSignatureCountsWithRememberedStrings() {
+        Molecule molecule = MoleculeFactory.propellane();
+        MoleculeSignature signature = new MoleculeSignature(molecule);
+        // some atoms have their tallest string, and some only a shorter one
+        signature.signatureStringForVertex(0, 3);
+        signature.signatureStringForVertex(1, 1);
+        signature.signatureStringForVertex(2, 0);
+        signature.signatureStringForVertex(2, 2);
+        assertSameAtomSignatureCounts(signature, molecule, 3);
+    }
 
 }
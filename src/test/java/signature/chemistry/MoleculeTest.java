@@ -0,0 +1,47 @@
+package signature.chemistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import signature.chemistry.Molecule.BondOrder;
+
+public class MoleculeTest {
+
+    @Test
+    public void neighboursFollowBondOrder() {
+        Molecule molecule = new Molecule("C", 4);
+        molecule.addSingleBond(2, 0);
+        molecule.addBond(0, 1, BondOrder.DOUBLE);
+        molecule.addSingleBond(0, 3);
+        Assert.assertArrayEquals(new int[] { 2, 1, 3 }, molecule.getConnected(0));
+        Assert.assertArrayEquals(new int[] { 0 }, molecule.getConnected(1));
+        Assert.assertEquals(3, molecule.getDegree(0));
+        Assert.assertEquals(4, molecule.getTotalOrder(0));
+        Assert.assertEquals(BondOrder.DOUBLE, molecule.getBondOrder(1, 0));
+        Assert.assertEquals(BondOrder.NONE, molecule.getBondOrder(1, 2));
+        Assert.assertTrue(molecule.isConnected(3, 0));
+        Assert.assertFalse(molecule.isConnected(3, 1));
+    }
+
+    @Test
+    public void neighboursUpdatedAfterChange() {
+        Molecule molecule = new Molecule("C", 2);
+        molecule.addSingleBond(0, 1);
+        Assert.assertArrayEquals(new int[] { 1 }, molecule.getConnected(0));
+        molecule.addAtom("O");
+        Assert.assertArrayEquals(new int[0], molecule.getConnected(2));
+        molecule.addBond(2, 0, BondOrder.TRIPLE);
+        Assert.assertArrayEquals(new int[] { 1, 2 }, molecule.getConnected(0));
+        Assert.assertEquals(BondOrder.TRIPLE, molecule.getBondOrder(0, 2));
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void bondsCannotBeChangedDirectly() {
+        Molecule molecule = new Molecule("C", 2);
+        molecule.addSingleBond(0, 1);
+        Molecule other = new Molecule("C", 3);
+        other.addSingleBond(1, 2);
+        molecule.bonds().add(other.bonds().get(0));
+    }
+
+}
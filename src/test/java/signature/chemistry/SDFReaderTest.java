@@ -0,0 +1,60 @@
+package signature.chemistry;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SDFReaderTest {
+
+    @Test
+    public void sameMoleculesAsReadingTheWholeFile() throws IOException {
+        String filename = "data/large_example.sdf";
+        List<Molecule> molecules = MoleculeReader.readSDFFile(filename);
+        SDFReader reader = MoleculeReader.iterateSDFFile(filename);
+        int count = 0;
+        for (Molecule molecule : reader) {
+            Molecule expected = molecules.get(count);
+            Assert.assertEquals(
+                    new MoleculeSignature(expected).toCanonicalString(), 
+                    new MoleculeSignature(molecule).toCanonicalString());
+            count++;
+        }
+        reader.close();
+        Assert.assertEquals(molecules.size(), count);
+        Assert.assertEquals(count, reader.getRecordCount());
+    }
+
+    @Test
+    public void streamCountsMolecules() throws IOException {
+        String filename = "data/test.sdf";
+        int expected = MoleculeReader.readSDFFile(filename).size();
+        Assert.assertEquals(expected, 
+                MoleculeReader.iterateSDFFile(filename).stream().count());
+    }
+
+    @Test
+    public void badRecordsAreSkipped() {
+        String sdf = 
+            "bad\n\n\n  x\n$$$$\n" +
+            "\n\n\n  1  0  0  0  0  0  0  0  0  0999 V2000\n" +
+            "    0.0000    0.0000    0.0000 C   0  0  0  0  0  0  0  0  0  0  0  0\n" +
+            "M  END\n$$$$\n" +
+            "unterminated\n";
+        SDFReader reader = new SDFReader(new StringReader(sdf));
+        Assert.assertTrue(reader.hasNext());
+        Assert.assertEquals(1, reader.next().getAtomCount());
+        Assert.assertFalse(reader.hasNext());
+        Assert.assertEquals(2, reader.getRecordCount());
+        try {
+            reader.next();
+            Assert.fail();
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+}
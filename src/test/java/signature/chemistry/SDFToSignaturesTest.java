@@ -0,0 +1,76 @@
+package signature.chemistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SDFToSignaturesTest {
+
+    public String[] run(List<Molecule> molecules, int threads, int height) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        int count = new SDFToSignatures(threads, height, 0)
+            .run(molecules.iterator(), out);
+        out.flush();
+        Assert.assertEquals(molecules.size(), count);
+        return bytes.toString().split("\n");
+    }
+
+    @Test
+    public void resultsAreInInputOrder() {
+        List<Molecule> molecules = new ArrayList<Molecule>();
+        for (int i = 0; i < 5; i++) {
+            molecules.addAll(MoleculeReader.readSDFFile("data/test.sdf"));
+            molecules.add(MoleculeFactory.propellane());
+            molecules.add(MoleculeFactory.threeStar());
+        }
+        String[] lines = run(molecules, 3, 2);
+        Assert.assertEquals(molecules.size(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            String[] fields = lines[i].split("\t");
+            Assert.assertEquals(String.valueOf(i + 1), fields[0]);
+            String title = molecules.get(i).name;
+            Assert.assertEquals((title == null) ? "" : title, fields[1]);
+            String expected = 
+                new MoleculeSignature(molecules.get(i), 2).getGraphSignature();
+            Assert.assertEquals(expected, fields[2]);
+        }
+    }
+
+    @Test
+    public void titlesAreReadFromTheRecords() {
+        List<Molecule> molecules = MoleculeReader.readSDFFile("data/test.sdf");
+        String[] lines = run(molecules, 2, 1);
+        for (int i = 0; i < lines.length; i++) {
+            Assert.assertNotNull(molecules.get(i).name);
+            Assert.assertEquals(molecules.get(i).name, lines[i].split("\t")[1]);
+        }
+    }
+
+    @Test
+    public void signaturesAreLookedUpInCache() {
+        List<Molecule> molecules = new ArrayList<Molecule>();
+        molecules.add(MoleculeFactory.propellane());
+        molecules.add(MoleculeFactory.threeStar());
+        SignatureCache cache = new LRUSignatureCache(10);
+        cache.put(MoleculeKey.of(molecules.get(0), "graph 2 STRING"), "cached");
+        SDFToSignatures sdfToSignatures = new SDFToSignatures(2, 2, 0);
+        sdfToSignatures.setCache(cache);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        sdfToSignatures.run(molecules.iterator(), out);
+        out.flush();
+        String[] lines = bytes.toString().split("\n");
+        Assert.assertEquals("cached", lines[0].split("\t")[2]);
+        String expected = 
+            new MoleculeSignature(molecules.get(1), 2).getGraphSignature();
+        Assert.assertEquals(expected, lines[1].split("\t")[2]);
+        Assert.assertEquals(expected, 
+                cache.get(MoleculeKey.of(molecules.get(1), "graph 2 STRING")));
+    }
+
+}
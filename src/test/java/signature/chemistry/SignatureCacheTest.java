@@ -0,0 +1,249 @@
+package signature.chemistry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SignatureCacheTest {
+
+    public Molecule hexane() {
+        Molecule molecule = new Molecule("C", 6);
+        molecule.addSingleBond(0, 1);
+        molecule.addSingleBond(1, 2);
+        molecule.addSingleBond(2, 3);
+        molecule.addSingleBond(3, 4);
+        molecule.addSingleBond(4, 5);
+        return molecule;
+    }
+
+    public Molecule methylpentane() {
+        Molecule molecule = new Molecule("C", 6);
+        molecule.addSingleBond(0, 1);
+        molecule.addSingleBond(1, 2);
+        molecule.addSingleBond(2, 3);
+        molecule.addSingleBond(3, 4);
+        molecule.addSingleBond(1, 5);
+        return molecule;
+    }
+
+    public File tempFile() throws IOException {
+        File file = File.createTempFile("signatures", ".cache");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void sameHashDifferentStructure() {
+        MoleculeKey a = MoleculeKey.of(hexane(), "");
+        MoleculeKey b = MoleculeKey.of(methylpentane(), "");
+        Assert.assertEquals(a.getHash(), b.getHash());
+        Assert.assertFalse(a.equals(b));
+        
+        SignatureCache cache = new LRUSignatureCache(10);
+        MoleculeSignature signatureA = new MoleculeSignature(hexane());
+        signatureA.setCache(cache);
+        MoleculeSignature signatureB = new MoleculeSignature(methylpentane());
+        signatureB.setCache(cache);
+        Assert.assertEquals(new MoleculeSignature(hexane()).toCanonicalString(),
+                signatureA.toCanonicalString());
+        Assert.assertEquals(
+                new MoleculeSignature(methylpentane()).toCanonicalString(),
+                signatureB.toCanonicalString());
+    }
+
+    @Test
+    public void onlyTheSameAtomOrderHits() {
+        // hexane numbered from the middle out
+        Molecule renumbered = new Molecule("C", 6);
+        renumbered.addSingleBond(0, 1);
+        renumbered.addSingleBond(0, 2);
+        renumbered.addSingleBond(1, 3);
+        renumbered.addSingleBond(2, 4);
+        renumbered.addSingleBond(3, 5);
+        MoleculeKey a = MoleculeKey.of(hexane(), "");
+        MoleculeKey b = MoleculeKey.of(renumbered, "");
+        Assert.assertEquals(a.getHash(), b.getHash());
+        Assert.assertFalse(a.equals(b));
+        Assert.assertEquals(a, MoleculeKey.of(hexane(), ""));
+        
+        SignatureCache cache = new LRUSignatureCache(10);
+        cache.put(MoleculeKey.of(hexane(), "canonical -1 STRING"), "cached");
+        MoleculeSignature signature = new MoleculeSignature(renumbered);
+        signature.setCache(cache);
+        Assert.assertEquals(new MoleculeSignature(hexane()).toCanonicalString(),
+                signature.toCanonicalString());
+    }
+
+    @Test
+    public void hitsSkipCanonization() {
+        SignatureCache cache = new LRUSignatureCache(10);
+        cache.put(MoleculeKey.of(hexane(), "canonical -1 STRING"), "cached");
+        MoleculeSignature signature = new MoleculeSignature(hexane());
+        signature.setCache(cache);
+        Assert.assertEquals("cached", signature.toCanonicalString());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsRemoved() {
+        LRUSignatureCache cache = new LRUSignatureCache(2);
+        MoleculeKey a = MoleculeKey.of(hexane(), "a");
+        MoleculeKey b = MoleculeKey.of(hexane(), "b");
+        MoleculeKey c = MoleculeKey.of(hexane(), "c");
+        cache.put(a, "A");
+        cache.put(b, "B");
+        cache.get(a);
+        cache.put(c, "C");
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("A", cache.get(a));
+        Assert.assertNull(cache.get(b));
+        Assert.assertEquals("C", cache.get(c));
+    }
+
+    @Test
+    public void fileCacheSurvivesReopening() throws IOException {
+        File file = tempFile();
+        MoleculeKey a = MoleculeKey.of(hexane(), "");
+        MoleculeKey b = MoleculeKey.of(methylpentane(), "");
+        MappedFileSignatureCache cache = 
+            new MappedFileSignatureCache(file.getPath());
+        cache.put(a, "[C]hexane");
+        cache.put(b, "[C]methylpentane");
+        Assert.assertEquals("[C]hexane", cache.get(a));
+        cache.close();
+        
+        // a partly written record at the end is dropped
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] { 0, 0, 1, 0, 7 });
+        out.close();
+        
+        cache = new MappedFileSignatureCache(file.getPath());
+        Assert.assertEquals(2, cache.size());
+        LRUSignatureCache tiered = new LRUSignatureCache(1, cache);
+        Assert.assertEquals("[C]hexane", tiered.get(a));
+        Assert.assertEquals("[C]methylpentane", tiered.get(b));
+        tiered.put(MoleculeKey.of(hexane(), "x"), "[C]x");
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals("[C]x", cache.get(MoleculeKey.of(hexane(), "x")));
+        cache.close();
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test
+    public void fileCacheRecordsCrossWindows() throws IOException {
+        File file = tempFile();
+        // smaller than some of the records, so they cross the windows
+        int windowSize = 64;
+        MappedFileSignatureCache cache = 
+            new MappedFileSignatureCache(file.getPath(), windowSize);
+        StringBuilder longSignature = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            longSignature.append("[C]");
+        }
+        for (int i = 0; i < 20; i++) {
+            cache.put(MoleculeKey.of(hexane(), "h" + i), "[C]" + i);
+            cache.put(MoleculeKey.of(methylpentane(), "m" + i), 
+                    longSignature.toString() + i);
+        }
+        cache.close();
+        
+        cache = new MappedFileSignatureCache(file.getPath(), windowSize);
+        Assert.assertEquals(40, cache.size());
+        for (int i = 19; i >= 0; i--) {
+            Assert.assertEquals("[C]" + i, 
+                    cache.get(MoleculeKey.of(hexane(), "h" + i)));
+            Assert.assertEquals(longSignature.toString() + i, 
+                    cache.get(MoleculeKey.of(methylpentane(), "m" + i)));
+        }
+        cache.close();
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test
+    public void badLengthBeforeTheEndIsAnError() throws IOException {
+        File file = tempFile();
+        MappedFileSignatureCache cache = 
+            new MappedFileSignatureCache(file.getPath());
+        cache.put(MoleculeKey.of(hexane(), ""), "[C]hexane");
+        cache.put(MoleculeKey.of(methylpentane(), ""), "[C]methylpentane");
+        cache.close();
+        long size = file.length();
+        
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeInt(3);
+        raf.close();
+        try {
+            new MappedFileSignatureCache(file.getPath());
+            Assert.fail("Opened a cache with a bad record");
+        } catch (IOException expected) {
+            // the later record is kept
+            Assert.assertEquals(size, file.length());
+        }
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test
+    public void fileCacheIndexGrows() throws IOException {
+        File file = tempFile();
+        MappedFileSignatureCache cache = 
+            new MappedFileSignatureCache(file.getPath());
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            // hexane and methylpentane keys have the same hash
+            cache.put(MoleculeKey.of(hexane(), "h" + i), "[C]" + i);
+            cache.put(MoleculeKey.of(methylpentane(), "h" + i), "[C]m" + i);
+        }
+        Assert.assertEquals(2 * count, cache.size());
+        cache.close();
+        
+        cache = new MappedFileSignatureCache(file.getPath());
+        Assert.assertEquals(2 * count, cache.size());
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals("[C]" + i, 
+                    cache.get(MoleculeKey.of(hexane(), "h" + i)));
+            Assert.assertEquals("[C]m" + i, 
+                    cache.get(MoleculeKey.of(methylpentane(), "h" + i)));
+        }
+        Assert.assertNull(cache.get(MoleculeKey.of(hexane(), "missing")));
+        cache.close();
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test
+    public void graphSignaturesAreCached() {
+        SignatureCache cache = new LRUSignatureCache(10);
+        cache.put(MoleculeKey.of(hexane(), "graph -1 STRING"), "graph");
+        MoleculeSignature signature = new MoleculeSignature(hexane());
+        signature.setCache(cache);
+        Assert.assertEquals("graph", signature.getGraphSignature());
+        Assert.assertEquals("graph", signature.getMolecularSignature());
+        Assert.assertEquals(1, ((LRUSignatureCache) cache).size());
+        
+        MoleculeSignature other = new MoleculeSignature(methylpentane());
+        other.setCache(cache);
+        String expected = 
+            new MoleculeSignature(methylpentane()).getGraphSignature();
+        Assert.assertEquals(expected, other.getGraphSignature());
+        Assert.assertEquals(expected, cache.get(
+                MoleculeKey.of(methylpentane(), "graph -1 STRING")));
+    }
+
+    @Test
+    public void settingsArePartOfTheKey() {
+        SignatureCache cache = new LRUSignatureCache(10);
+        cache.put(MoleculeKey.of(hexane(), "canonical -1 STRING"), "cached");
+        MoleculeSignature signature = new MoleculeSignature(hexane());
+        signature.setCache(cache);
+        signature.setPrefilter(false);
+        signature.setBoundedCanonicalSearch(true);
+        String expected = new MoleculeSignature(hexane()).toCanonicalString();
+        Assert.assertEquals(expected, signature.toCanonicalString());
+        Assert.assertEquals(expected, cache.get(MoleculeKey.of(
+                hexane(), "canonical -1 STRING unfiltered bounded")));
+    }
+
+}
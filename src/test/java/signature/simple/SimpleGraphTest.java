@@ -48,6 +48,29 @@ public class SimpleGraphTest {
         
     }
     
+    @Test
+    public void testNeighbours() {
+        SimpleGraph g = new SimpleGraph("0:3,0:1,2:0");
+        Assert.assertEquals(3, g.degree(0));
+        Assert.assertTrue(g.isConnected(2, 0));
+        Assert.assertFalse(g.isConnected(1, 2));
+        int[] connected = g.getConnected(0);
+        Assert.assertEquals(3, connected[0]);
+        Assert.assertEquals(1, connected[1]);
+        Assert.assertEquals(2, connected[2]);
+        
+        g.makeEdge(1, 2);
+        Assert.assertTrue(g.isConnected(1, 2));
+        Assert.assertEquals(2, g.degree(1));
+        
+        try {
+            g.getEdges().clear();
+            Assert.fail("The edges could be changed without makeEdge");
+        } catch (UnsupportedOperationException expected) {
+            Assert.assertEquals(4, g.getEdges().size());
+        }
+    }
+    
     @Test
     public void signatureHeightTest() {
         SimpleGraph g = SimpleGraphFactory.makeCuneane();